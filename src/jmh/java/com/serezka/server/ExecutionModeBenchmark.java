@@ -0,0 +1,103 @@
+package com.serezka.server;
+
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.service.AuthenticationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles of the transfer and balance endpoints
+ * served by Tomcat platform threads and by virtual threads with the connection limiter
+ * <p>
+ * Runs the whole application in-process over HTTP. Defaults to in-memory H2,
+ * pass {@code -Dbenchmark.jdbc.url=jdbc:postgresql://...} (with user/password properties) to measure real JDBC latency
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final int CLIENTS = 512;
+    private static final int ACCOUNTS = 64;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    ConfigurableApplicationContext context;
+    HttpClient client;
+    URI money;
+    String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ServerApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.docker.compose.enabled=false",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.datasource.url=" + System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000"),
+                        "spring.datasource.username=" + System.getProperty("benchmark.jdbc.username", "sa"),
+                        "spring.datasource.password=" + System.getProperty("benchmark.jdbc.password", ""),
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "logging.level.root=warn")
+                .run();
+
+        AuthenticationService authenticationService = context.getBean(AuthenticationService.class);
+        tokens = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++)
+            tokens[i] = authenticationService.register(User.builder()
+                    .username("user" + i)
+                    .password("password")
+                    .mail("user" + i + "@bank.test")
+                    .build()).getToken();
+
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        money = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/money");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(CLIENTS)
+    public int transfer() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+
+        HttpRequest request = HttpRequest.newBuilder(money)
+                .header("Authorization", "Bearer " + tokens[from])
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"to\":\"user" + to + "\",\"amount\":0.01}"))
+                .build();
+
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    @Threads(CLIENTS)
+    public int balance() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(money)
+                .header("Authorization", "Bearer " + tokens[ThreadLocalRandom.current().nextInt(ACCOUNTS)])
+                .GET()
+                .build();
+
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
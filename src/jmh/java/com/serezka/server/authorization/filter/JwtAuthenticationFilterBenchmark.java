@@ -0,0 +1,71 @@
+package com.serezka.server.authorization.filter;
+
+import com.serezka.server.authorization.config.PrincipalCacheProperties;
+import com.serezka.server.authorization.config.TokenProperties;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.authorization.service.JwtService;
+import com.serezka.server.authorization.service.PrincipalCache;
+import com.serezka.server.authorization.service.UserDetailsServiceImp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one request with a bearer token, from header to populated security context
+ * Users come from a stub repository, so only token checks and the principal cache are measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JwtAuthenticationFilterBenchmark {
+    JwtAuthenticationFilter filter;
+    String header;
+
+    @Setup
+    public void setUp() {
+        User user = User.builder().id(1L).username("benchmark").password("password").mail("benchmark@bank.test").build();
+
+        UserRepository repository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByUsername" -> Optional.of(user);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+
+        PrincipalCache principalCache = new PrincipalCache(new PrincipalCacheProperties(), new SimpleMeterRegistry());
+        JwtService jwtService = new JwtService(new TokenProperties(), new SimpleMeterRegistry());
+
+        filter = new JwtAuthenticationFilter(jwtService, new UserDetailsServiceImp(repository, principalCache));
+        header = "Bearer " + jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public Object authenticate() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/money");
+        request.addHeader("Authorization", header);
+
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Benchmark
+    public Object anonymous() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/money");
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return request;
+    }
+}
@@ -0,0 +1,71 @@
+package com.serezka.server.authorization.service;
+
+import com.serezka.server.authorization.config.TokenProperties;
+import com.serezka.server.authorization.database.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-request cost of token checks done by {@code JwtAuthenticationFilter} and of issuing tokens
+ * {@code legacy} reproduces the previous filter: subject, subject again and expiration,
+ * each parsed with a freshly built parser and signing key
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtServiceBenchmark {
+    private static final String SECRET_KEY = "c067eeea69024d8d44f2fe22276759bb9f6bfbcfa83234bd2f1790532d20cd94";
+
+    JwtService jwtService;
+    User user;
+    String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(new TokenProperties(), new SimpleMeterRegistry());
+        user = User.builder().username("benchmark").password("password").mail("benchmark@bank.test").build();
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        String username = legacyClaim(token, Claims::getSubject);
+        return username != null
+                && legacyClaim(token, Claims::getSubject).equals(user.getUsername())
+                && !legacyClaim(token, Claims::getExpiration).before(new Date());
+    }
+
+    @Benchmark
+    public Claims parseOnce() {
+        return jwtService.parse(token);
+    }
+
+    @Benchmark
+    public Object verifyCached() {
+        return jwtService.verify(token).orElseThrow();
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(token);
+    }
+
+    private <T> T legacyClaim(String token, Function<Claims, T> resolver) {
+        SecretKey key = Keys.hmacShaKeyFor(Decoders.BASE64URL.decode(SECRET_KEY));
+        return resolver.apply(Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload());
+    }
+}
@@ -0,0 +1,43 @@
+package com.serezka.server.money.controller.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.serezka.server.money.database.model.Money;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON binding of transfer requests, with the object mapper configured the way Spring MVC configures it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferDtoBindingBenchmark {
+    ObjectReader reader;
+    ObjectWriter writer;
+    byte[] json;
+    TransferDto transfer;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        reader = mapper.readerFor(TransferDto.class);
+        writer = mapper.writerFor(TransferDto.class);
+        json = "{\"to\":\"recipient\",\"amount\":125.5}".getBytes(StandardCharsets.UTF_8);
+        transfer = new TransferDto("recipient", Money.parse("125.50"));
+    }
+
+    @Benchmark
+    public TransferDto read() throws Exception {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        return writer.writeValueAsBytes(transfer);
+    }
+}
@@ -0,0 +1,89 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.ServerApplication;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of {@link BalanceService#withdraw} in every transfer mode, on in-memory H2
+ * Each operation loads the balances and moves money in one transaction, the way {@code POST /money} does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BalanceServiceBenchmark {
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    @Param({"guarded", "pessimistic", "optimistic", "memory"})
+    public String mode;
+
+    ConfigurableApplicationContext context;
+    BalanceService balanceService;
+    BalanceRepository balanceRepository;
+    TransactionTemplate transactionTemplate;
+    Long fromId;
+    Long toId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new SpringApplicationBuilder(ServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.docker.compose.enabled=false",
+                        "spring.datasource.url=jdbc:h2:mem:withdraw;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                        "spring.datasource.username=sa",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.show-sql=false",
+                        "money.transfer.mode=" + mode,
+                        "money.engine.wal-directory=" + Files.createTempDirectory("wal"),
+                        "logging.level.root=warn")
+                .run();
+
+        balanceService = context.getBean(BalanceService.class);
+        balanceRepository = context.getBean(BalanceRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        fromId = createBalance("from").getId();
+        toId = createBalance("to").getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void withdraw() {
+        transactionTemplate.executeWithoutResult(status ->
+                balanceService.withdraw(balanceRepository.findById(fromId).orElseThrow(), AMOUNT));
+    }
+
+    @Benchmark
+    public void transfer() {
+        transactionTemplate.executeWithoutResult(status -> balanceService.withdraw(
+                balanceRepository.findById(fromId).orElseThrow(),
+                balanceRepository.findById(toId).orElseThrow(),
+                AMOUNT));
+    }
+
+    private Balance createBalance(String username) {
+        User user = context.getBean(UserRepository.class).save(User.builder()
+                .username(username)
+                .password("password")
+                .mail(username + "@bank.test")
+                .build());
+        return balanceRepository.save(Balance.builder().user(user).balance(Money.parse("1000000000")).build());
+    }
+}
@@ -0,0 +1,89 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.ServerApplication;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to create a block of users with their balances in one transaction
+ * <p>
+ * Ids come from pooled sequences, so with {@code batchSize=50} the inserts go out in JDBC batches, and with
+ * {@code batchSize=0} every row is a statement of its own, the way it was with identity ids.
+ * Defaults to in-memory H2, pass {@code -Dbenchmark.jdbc.url=jdbc:postgresql://...} (with user/password properties)
+ * to include network round trips
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class BulkInsertBenchmark {
+    private static final int USERS = 500;
+    private static final Money AMOUNT = Money.parse("1000");
+
+    @Param({"0", "50"})
+    public int batchSize;
+
+    ConfigurableApplicationContext context;
+    TransactionTemplate transactionTemplate;
+    UserRepository userRepository;
+    BalanceRepository balanceRepository;
+    long block;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.docker.compose.enabled=false",
+                        "spring.datasource.url=" + System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:bulk;DB_CLOSE_DELAY=-1"),
+                        "spring.datasource.username=" + System.getProperty("benchmark.jdbc.username", "sa"),
+                        "spring.datasource.password=" + System.getProperty("benchmark.jdbc.password", ""),
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                        "logging.level.root=warn")
+                .run();
+
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        userRepository = context.getBean(UserRepository.class);
+        balanceRepository = context.getBean(BalanceRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int create() {
+        String prefix = "bulk" + block++ + "_";
+        return transactionTemplate.execute(status -> {
+            List<User> users = new ArrayList<>(USERS);
+            for (int i = 0; i < USERS; i++)
+                users.add(User.builder()
+                        .username(prefix + i)
+                        .password("password")
+                        .mail(prefix + i + "@bank.test")
+                        .build());
+            userRepository.saveAll(users);
+
+            List<Balance> balances = new ArrayList<>(USERS);
+            for (User user : users) balances.add(Balance.builder().user(user).balance(AMOUNT).build());
+            return balanceRepository.saveAll(balances).size();
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.ServerApplication;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of concurrent transfers between random accounts in pessimistic, optimistic and guarded mode
+ * <p>
+ * With 2 accounts every transfer conflicts with every other one, with 1024 conflicts are rare.
+ * Every operation binds its own entity manager for its loads and the transfer, the way open-in-view does
+ * for {@code POST /money}. Defaults to in-memory H2, pass {@code -Dbenchmark.jdbc.url=jdbc:postgresql://...}
+ * (with user/password properties) to measure real row lock contention
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ContentionBenchmark {
+    private static final int THREADS = 16;
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    @Param({"pessimistic", "optimistic", "guarded"})
+    public String mode;
+
+    @Param({"2", "1024"})
+    public int accounts;
+
+    ConfigurableApplicationContext context;
+    EntityManagerFactory entityManagerFactory;
+    BalanceService balanceService;
+    BalanceRepository balanceRepository;
+    long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.docker.compose.enabled=false",
+                        "spring.datasource.url=" + System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:contention;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000"),
+                        "spring.datasource.username=" + System.getProperty("benchmark.jdbc.username", "sa"),
+                        "spring.datasource.password=" + System.getProperty("benchmark.jdbc.password", ""),
+                        "spring.datasource.hikari.maximum-pool-size=" + THREADS,
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.show-sql=false",
+                        "money.transfer.mode=" + mode,
+                        "logging.level.root=warn")
+                .run();
+
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        balanceService = context.getBean(BalanceService.class);
+        balanceRepository = context.getBean(BalanceRepository.class);
+
+        ids = new long[accounts];
+        for (int i = 0; i < accounts; i++) ids[i] = createBalance("account" + i).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            balanceService.withdraw(
+                    balanceRepository.findById(ids[from]).orElseThrow(),
+                    balanceRepository.findById(ids[to]).orElseThrow(),
+                    AMOUNT);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+        }
+    }
+
+    private Balance createBalance(String username) {
+        User user = context.getBean(UserRepository.class).save(User.builder()
+                .username(username)
+                .password("password")
+                .mail(username + "@bank.test")
+                .build());
+        return balanceRepository.save(Balance.builder().user(user).balance(Money.parse("1000000000")).build());
+    }
+}
@@ -0,0 +1,99 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.ServerApplication;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of concurrent transfers into one hot account split into 1, 4 and 16 slots
+ * <p>
+ * Every thread pays from its own account, so the only shared row is the receiving one.
+ * Defaults to in-memory H2, pass {@code -Dbenchmark.jdbc.url=jdbc:postgresql://...}
+ * (with user/password properties) to measure real row lock contention
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class StripedCreditBenchmark {
+    private static final int THREADS = 32;
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    @Param({"1", "4", "16"})
+    public int stripes;
+
+    ConfigurableApplicationContext context;
+    BalanceService balanceService;
+    BalanceRepository balanceRepository;
+    Balance merchant;
+    Balance[] payers;
+    AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.docker.compose.enabled=false",
+                        "spring.datasource.url=" + System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:stripes;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000"),
+                        "spring.datasource.username=" + System.getProperty("benchmark.jdbc.username", "sa"),
+                        "spring.datasource.password=" + System.getProperty("benchmark.jdbc.password", ""),
+                        "spring.datasource.hikari.maximum-pool-size=" + THREADS,
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn")
+                .run();
+
+        balanceService = context.getBean(BalanceService.class);
+        balanceRepository = context.getBean(BalanceRepository.class);
+
+        merchant = createBalance("merchant");
+        if (stripes > 1) context.getBean(StripedBalanceService.class).stripe(merchant.getId(), stripes);
+        merchant = balanceRepository.findById(merchant.getId()).orElseThrow();
+
+        payers = new Balance[THREADS];
+        for (int i = 0; i < THREADS; i++) payers[i] = createBalance("payer" + i);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        Balance balance;
+
+        @Setup(Level.Trial)
+        public void setUp(StripedCreditBenchmark benchmark) {
+            balance = benchmark.payers[benchmark.next.getAndIncrement() % THREADS];
+        }
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void credit(Payer payer) {
+        balanceService.withdraw(payer.balance, merchant, AMOUNT);
+    }
+
+    private Balance createBalance(String username) {
+        User user = context.getBean(UserRepository.class).save(User.builder()
+                .username(username)
+                .password("password")
+                .mail(username + "@bank.test")
+                .build());
+        return balanceRepository.save(Balance.builder().user(user).balance(Money.parse("1000000000")).build());
+    }
+}
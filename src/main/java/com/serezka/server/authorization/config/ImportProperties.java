@@ -0,0 +1,26 @@
+package com.serezka.server.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Bulk user import settings
+ * Bound from {@code authorization.import.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "authorization.import")
+@Getter @Setter
+public class ImportProperties {
+    /**
+     * Records checked for duplicates and inserted in one transaction
+     */
+    private int chunkSize = 500;
+
+    /**
+     * Threads hashing passwords, 0 = number of processors
+     */
+    private int hashThreads = 0;
+}
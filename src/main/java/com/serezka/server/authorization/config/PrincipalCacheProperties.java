@@ -0,0 +1,28 @@
+package com.serezka.server.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Authenticated principal cache settings
+ * Bound from {@code authorization.principal-cache.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "authorization.principal-cache")
+@Getter @Setter
+public class PrincipalCacheProperties {
+    /**
+     * Maximum number of cached users
+     */
+    private long size = 10_000;
+
+    /**
+     * How long a loaded user is served without going to the database
+     */
+    private Duration ttl = Duration.ofMinutes(5);
+}
@@ -0,0 +1,26 @@
+package com.serezka.server.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * User search settings
+ * Bound from {@code authorization.search.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "authorization.search")
+@Getter @Setter
+public class SearchProperties {
+    /**
+     * Shortest query, trigram index can't narrow down shorter ones
+     */
+    private int minLength = 3;
+
+    /**
+     * Largest page size a client can ask for
+     */
+    private int maxPageSize = 50;
+}
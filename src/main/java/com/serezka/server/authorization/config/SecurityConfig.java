@@ -1,7 +1,10 @@
 package com.serezka.server.authorization.config;
 
+import com.serezka.server.authorization.database.model.User;
 import com.serezka.server.authorization.filter.JwtAuthenticationFilter;
 import com.serezka.server.authorization.service.UserDetailsServiceImp;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -33,7 +36,11 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(
                         req -> req
-                                .requestMatchers("/signup", "/signin").permitAll()
+                                // long polls complete on another thread, the request was authorized before
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                                .requestMatchers("/signup", "/signin", "/token/refresh", "/actuator/health").permitAll()
+                                .requestMatchers("/actuator/**").hasAuthority(User.Role.ADMIN.name())
+                                .requestMatchers("/admin/**").hasAuthority(User.Role.ADMIN.name())
 //                                .requestMatchers("/money").authenticated()
                                 .anyRequest().authenticated()
                 ).userDetailsService(userDetailsServiceImp)
@@ -44,8 +51,8 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry);
     }
 
     @Bean
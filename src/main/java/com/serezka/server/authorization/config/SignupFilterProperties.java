@@ -0,0 +1,26 @@
+package com.serezka.server.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of Bloom filters of taken usernames and mails
+ * Bound from {@code authorization.signup-filter.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "authorization.signup-filter")
+@Getter @Setter
+public class SignupFilterProperties {
+    /**
+     * Number of users the filters are sized for, more users raise the false positive rate
+     */
+    private long expectedUsers = 1_000_000;
+
+    /**
+     * Share of new names reported as maybe taken at the expected number of users
+     */
+    private double falsePositiveRate = 0.01;
+}
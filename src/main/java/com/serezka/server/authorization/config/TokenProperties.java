@@ -0,0 +1,28 @@
+package com.serezka.server.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Access and refresh token settings
+ * Bound from {@code authorization.token.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "authorization.token")
+@Getter @Setter
+public class TokenProperties {
+    /**
+     * Lifetime of access tokens, they can't be revoked before it ends
+     */
+    private Duration accessTtl = Duration.ofMinutes(15);
+
+    /**
+     * Lifetime of refresh tokens, counted again from every refresh
+     */
+    private Duration refreshTtl = Duration.ofDays(30);
+}
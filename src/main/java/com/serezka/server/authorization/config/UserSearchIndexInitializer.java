@@ -0,0 +1,57 @@
+package com.serezka.server.authorization.config;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * Creates the trigram index user search relies on, on PostgreSQL only
+ * <p>
+ * The users table is created by Hibernate after migrations have run, so on a new database a migration
+ * could not index it. The index is built concurrently, signups are not blocked while it is built.
+ * Search keeps working without it, only as a full scan.
+ * A build that failed midway leaves an invalid index behind, which is dropped and built again on the next start.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class UserSearchIndexInitializer {
+    private static final String INDEX = "users_username_trgm_idx";
+
+    DataSource dataSource;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndex() {
+        try {
+            String database = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            if (!"PostgreSQL".equals(database)) return;
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+
+            Boolean valid = jdbcTemplate.query("SELECT i.indisvalid FROM pg_index i WHERE i.indexrelid = to_regclass(?)",
+                    rs -> rs.next() ? rs.getBoolean(1) : null, INDEX);
+            if (Boolean.TRUE.equals(valid)) return;
+            if (valid != null) {
+                log.warn("Trigram index of usernames is invalid, building it again");
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + INDEX);
+            }
+
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + INDEX + " ON users USING gin (username gin_trgm_ops)");
+        } catch (DataAccessException | MetaDataAccessException e) {
+            log.warn("Failed to create trigram index of usernames, user search will scan the table: {}", e.getMessage());
+        }
+    }
+}
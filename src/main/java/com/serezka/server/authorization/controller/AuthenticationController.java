@@ -1,20 +1,25 @@
 package com.serezka.server.authorization.controller;
 
+import com.serezka.server.authorization.controller.dto.TokenRefreshDto;
 import com.serezka.server.authorization.controller.dto.UserLoginDto;
 import com.serezka.server.authorization.controller.dto.UserRegistrationDto;
 import com.serezka.server.authorization.database.model.AuthenticationResponse;
 import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserIdentity;
 import com.serezka.server.authorization.database.service.UserService;
 import com.serezka.server.authorization.service.AuthenticationService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * Controller for user authentication
  *
@@ -47,15 +52,15 @@ public class AuthenticationController {
                     .body(new AuthenticationResponse(true, "missing required fields"));
         }
 
-        // Check if user with this mail or username already exists
-        if (userService.existsByMail(registrationDto.mail())) {
+        // Check if user with this mail or username already exists, one query at most
+        List<UserIdentity> taken = userService.findTaken(registrationDto.login(), registrationDto.mail());
+        if (taken.stream().anyMatch(user -> registrationDto.mail().equals(user.getMail()))) {
             log.info("Failed to process signup query: user with this mail already registered: {}", registrationDto.mail());
             return ResponseEntity.ok()
                     .body(new AuthenticationResponse(true, "user with this mail already registered"));
         }
 
-        // Check if user with this username already exists
-        if (userService.existsByUsername(registrationDto.login())) {
+        if (!taken.isEmpty()) {
             log.info("Failed to process signup query: user with this username already exists: {}", registrationDto.login());
             return ResponseEntity.ok()
                     .body(new AuthenticationResponse(true, "user with this username already exists"));
@@ -66,6 +71,11 @@ public class AuthenticationController {
             ResponseEntity<AuthenticationResponse> response = ResponseEntity.ok(authService.register(registrationDto.toUser()));
             log.info("User successfully registered: {}", registrationDto.login());
             return response;
+        } catch (DataIntegrityViolationException ex) {
+            // registered concurrently or on another node, the filter didn't know yet
+            log.info("Failed to process signup query: user with this mail or username already exists: {}", registrationDto.login());
+            return ResponseEntity.ok()
+                    .body(new AuthenticationResponse(true, "user with this mail or username already exists"));
         } catch (Exception ex) {
             log.warn("Failed to register user: {}", ex.getMessage());
             return ResponseEntity.ok()
@@ -92,4 +102,22 @@ public class AuthenticationController {
         }
     }
 
+    /**
+     * Get new access token without password
+     * The refresh token can be used once, the response carries the next one
+     *
+     * @param refreshDto refresh token from sign-in, sign-up or previous refresh
+     * @return response with error message if refresh token is not valid and new tokens if it is
+     */
+    @PostMapping("/token/refresh")
+    public ResponseEntity<AuthenticationResponse> refresh(@RequestBody TokenRefreshDto refreshDto) {
+        if (refreshDto.refreshToken() == null)
+            return ResponseEntity.badRequest()
+                    .body(new AuthenticationResponse(true, "missing required fields"));
+
+        AuthenticationResponse response = authService.refresh(refreshDto.refreshToken());
+        if (response.isError()) log.info("Failed to refresh token: refresh token is not valid");
+        return ResponseEntity.ok(response);
+    }
+
 }
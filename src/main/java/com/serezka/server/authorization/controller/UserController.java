@@ -0,0 +1,55 @@
+package com.serezka.server.authorization.controller;
+
+import com.serezka.server.authorization.config.SearchProperties;
+import com.serezka.server.authorization.controller.dto.UserSearchResponse;
+import com.serezka.server.authorization.database.repository.UserSummary;
+import com.serezka.server.authorization.database.service.UserService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Controller for looking up other users
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+
+@RestController
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class UserController {
+    UserService userService;
+    SearchProperties searchProperties;
+
+    /**
+     * Search users by part of username, ignoring case
+     *
+     * @param query part of username, at least {@code authorization.search.min-length} characters
+     * @param after username of last user of previous page, absent for first page
+     * @param size  page size, at most {@code authorization.search.max-page-size}
+     * @return page of matching users
+     */
+    @GetMapping("/users/search")
+    public ResponseEntity<UserSearchResponse> search(@RequestParam String query,
+                                                     @RequestParam(required = false) String after,
+                                                     @RequestParam(defaultValue = "20") int size) {
+        if (query.length() < searchProperties.getMinLength() || size <= 0 || size > searchProperties.getMaxPageSize())
+            return ResponseEntity.badRequest()
+                    .body(new UserSearchResponse(List.of(), null));
+
+        List<UserSummary> users = userService.searchByUsername(query, after, size);
+        String next = users.size() < size ? null : users.get(users.size() - 1).getUsername();
+
+        return ResponseEntity.ok()
+                .body(new UserSearchResponse(users, next));
+    }
+}
@@ -0,0 +1,73 @@
+package com.serezka.server.authorization.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serezka.server.authorization.service.UserImportService;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Controller for bulk user registration, available to admins only
+ * Takes newline delimited registration records and streams back the result of every record
+ * as soon as its chunk is committed, so the client can follow progress
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+
+@RestController
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class UserImportController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    UserImportService userImportService;
+    ObjectMapper objectMapper;
+
+    /**
+     * Register users, one {@code {"login", "password", "mail"}} object per line
+     *
+     * @param request  request to read records from
+     * @param response response to stream results to, one {@code {"line", "login", "status", "message"}} object per record
+     */
+    @PostMapping(value = "/admin/import/users", consumes = NDJSON)
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("New request to import users");
+
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        ServletOutputStream output = response.getOutputStream();
+
+        try {
+            userImportService.importUsers(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8), results -> {
+                try {
+                    for (UserImportService.Result result : results) {
+                        output.write(objectMapper.writeValueAsBytes(result));
+                        output.write('\n');
+                    }
+                    output.flush();
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException(e);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // committed chunks stay, the client sees results up to the last of them
+            log.error("Import of users was interrupted: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,3 @@
+package com.serezka.server.authorization.controller.dto;
+
+public record TokenRefreshDto(String refreshToken) { }
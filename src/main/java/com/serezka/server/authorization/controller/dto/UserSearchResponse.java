@@ -0,0 +1,13 @@
+package com.serezka.server.authorization.controller.dto;
+
+import com.serezka.server.authorization.database.repository.UserSummary;
+
+import java.util.List;
+
+/**
+ * Page of user search results
+ *
+ * @param users users sorted by username
+ * @param next  value of {@code after} for the next page, null if this page is the last
+ */
+public record UserSearchResponse(List<UserSummary> users, String next) { }
@@ -1,5 +1,6 @@
 package com.serezka.server.authorization.database.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 
 @Getter
@@ -7,10 +8,21 @@ public class AuthenticationResponse {
     private boolean error = false;
     private final String token;
 
+    /**
+     * One-time token to get the next access token from {@code /token/refresh}, absent in errors
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String refreshToken;
+
     public AuthenticationResponse(String token) {
         this.token = token;
     }
 
+    public AuthenticationResponse(String token, String refreshToken) {
+        this.token = token;
+        this.refreshToken = refreshToken;
+    }
+
     public AuthenticationResponse(boolean error, String token) {
         this.error = error;
         this.token = token;
@@ -0,0 +1,70 @@
+package com.serezka.server.authorization.database.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Refresh token issued to a user, stored as a hash only
+ * Every refresh marks the token used and issues the next one of its family
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "refresh_tokens_family_idx", columnList = "family"),
+        @Index(name = "refresh_tokens_expires_idx", columnList = "expires")
+})
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@ToString
+@Builder
+public class RefreshToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    /**
+     * SHA-256 of the token as hex, tokens are random enough to be looked up by a plain hash
+     */
+    @Column(name = "token_hash", nullable = false, unique = true, length = 64)
+    String tokenHash;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    User user;
+
+    /**
+     * Shared by all tokens rotated from one sign-in, revoked together when a used one comes back
+     */
+    @Column(nullable = false)
+    UUID family;
+
+    @Column(nullable = false)
+    Instant expires;
+
+    @Column(nullable = false)
+    boolean used;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        RefreshToken token = (RefreshToken) o;
+        return getId() != null && Objects.equals(getId(), token.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
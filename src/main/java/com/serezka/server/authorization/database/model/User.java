@@ -19,8 +19,12 @@ import java.util.Objects;
 @Builder
 @ToString
 public class User implements UserDetails {
+    /**
+     * Taken from {@code users_seq} in blocks of 50, so inserts of many users can be batched
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
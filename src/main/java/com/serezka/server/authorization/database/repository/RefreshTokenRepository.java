@@ -0,0 +1,27 @@
+package com.serezka.server.authorization.database.repository;
+
+import com.serezka.server.authorization.database.model.RefreshToken;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    /**
+     * Find token with its user, locked so concurrent refreshes with one token can't both succeed
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @EntityGraph(attributePaths = "user")
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.family = :family")
+    int deleteByFamily(@Param("family") UUID family);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.expires < :before")
+    int deleteExpiredBefore(@Param("before") Instant before);
+}
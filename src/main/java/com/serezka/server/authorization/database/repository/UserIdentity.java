@@ -0,0 +1,10 @@
+package com.serezka.server.authorization.database.repository;
+
+/**
+ * Username and mail of a user, enough to tell whether a new one would clash with it
+ */
+public interface UserIdentity {
+    String getUsername();
+
+    String getMail();
+}
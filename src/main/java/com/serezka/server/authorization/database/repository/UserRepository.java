@@ -1,19 +1,35 @@
 package com.serezka.server.authorization.database.repository;
 
 import com.serezka.server.authorization.database.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByUsername(String username);
 
-    List<User> findAllByUsernameContaining(String usernamePart);
-
     boolean existsByUsername(String username);
 
     boolean existsByMail(String mail);
 
     boolean existsByMailOrUsername(String mail, String username);
+
+    /**
+     * Seek page of users whose username matches pattern, ignoring case, sorted by username
+     * On PostgreSQL {@code ILIKE} is served by the trigram index on username, and no rows of earlier pages are skipped
+     *
+     * @param pattern {@code LIKE} pattern, with {@code \} escaping wildcards
+     * @param after   return users with username sorted after this
+     * @param limit   page size
+     */
+    @Query("SELECT u.id AS id, u.username AS username FROM User u " +
+            "WHERE u.username ILIKE :pattern ESCAPE '\\' AND u.username > :after ORDER BY u.username")
+    List<UserSummary> searchByUsername(@Param("pattern") String pattern, @Param("after") String after, Limit limit);
+
+    List<UserIdentity> findAllByUsernameInOrMailIn(Collection<String> usernames, Collection<String> mails);
 }
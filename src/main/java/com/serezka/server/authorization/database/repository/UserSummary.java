@@ -0,0 +1,10 @@
+package com.serezka.server.authorization.database.repository;
+
+/**
+ * Id and username of a user, all that search results show
+ */
+public interface UserSummary {
+    Long getId();
+
+    String getUsername();
+}
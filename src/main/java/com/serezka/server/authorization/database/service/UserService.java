@@ -1,13 +1,19 @@
 package com.serezka.server.authorization.database.service;
 
 import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserIdentity;
 import com.serezka.server.authorization.database.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import com.serezka.server.authorization.database.repository.UserSummary;
+import com.serezka.server.authorization.service.PrincipalCache;
+import com.serezka.server.authorization.service.SignupFilter;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,14 +22,32 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class UserService {
     UserRepository userRepository;
+    PrincipalCache principalCache;
+    SignupFilter signupFilter;
 
     @Transactional
     public User save(User user) {
-        return userRepository.save(user);
+        signupFilter.add(user.getUsername(), user.getMail());
+
+        // new users can't be cached yet, only updates need eviction
+        boolean existing = user.getId() != null;
+        User saved = userRepository.save(user);
+        if (existing) principalCache.evict(saved);
+        return saved;
+    }
+
+    /**
+     * Insert new users, sent in JDBC batches
+     */
+    @Transactional
+    public List<User> saveAll(Collection<User> users) {
+        users.forEach(user -> signupFilter.add(user.getUsername(), user.getMail()));
+        return userRepository.saveAll(users);
     }
 
     @Transactional
     public void deleteById(Integer id) {
+        userRepository.findById(id).ifPresent(principalCache::evict);
         userRepository.deleteById(id);
     }
 
@@ -32,23 +56,54 @@ public class UserService {
         return userRepository.findByUsername(username);
     }
 
-    @Transactional
-    public List<User> findAllByUsernameContaining(String usernamePart) {
-        return userRepository.findAllByUsernameContaining(usernamePart);
+    /**
+     * Find page of users whose username contains part, ignoring case, sorted by username
+     * Pages are sought by username and no total is counted, so the cost doesn't grow with the number of matches or the page depth
+     *
+     * @param usernamePart part of username, wildcards in it match literally
+     * @param after        username of last user of previous page, null for first page
+     * @param limit        page size
+     */
+    @Transactional(readOnly = true)
+    public List<UserSummary> searchByUsername(String usernamePart, String after, int limit) {
+        String escaped = usernamePart.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return userRepository.searchByUsername("%" + escaped + "%", after == null ? "" : after, Limit.of(limit));
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public boolean existsByUsername(String username) {
         return userRepository.existsByUsername(username);
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public boolean existsByMail(String mail) {
         return userRepository.existsByMail(mail);
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public boolean existsByMailOrUsername(String mail, String username) {
         return userRepository.existsByMailOrUsername(mail, username);
     }
+
+    /**
+     * Find users clashing with new username or mail in one query
+     * Not transactional, names the signup filter has never seen don't touch the database at all
+     *
+     * @return up to two users, one with this username and one with this mail
+     */
+    public List<UserIdentity> findTaken(String username, String mail) {
+        return findTaken(List.of(username), List.of(mail));
+    }
+
+    /**
+     * Find users clashing with any of the given usernames or mails in one query
+     * Not transactional, names the signup filter has never seen are not looked up
+     */
+    public List<UserIdentity> findTaken(Collection<String> usernames, Collection<String> mails) {
+        List<String> maybeUsernames = usernames.stream().filter(signupFilter::mightHaveUsername).toList();
+        List<String> maybeMails = mails.stream().filter(signupFilter::mightHaveMail).toList();
+        if (maybeUsernames.isEmpty() && maybeMails.isEmpty()) return List.of();
+
+        return userRepository.findAllByUsernameInOrMailIn(maybeUsernames, maybeMails);
+    }
 }
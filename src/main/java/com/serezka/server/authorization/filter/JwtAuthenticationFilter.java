@@ -2,6 +2,7 @@ package com.serezka.server.authorization.filter;
 
 import com.serezka.server.authorization.service.JwtService;
 import com.serezka.server.authorization.service.UserDetailsServiceImp;
+import io.jsonwebtoken.Claims;
 import io.micrometer.common.lang.NonNull;
 import jakarta.annotation.Nonnull;
 import jakarta.servlet.FilterChain;
@@ -11,11 +12,13 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -42,13 +45,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String token = authHeader.substring(7);
-        String username = jwtService.extractUsername(token);
+        Optional<Claims> claims = jwtService.verify(token);
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (claims.isPresent() && SecurityContextHolder.getContext().getAuthentication() == null) {
+            try {
+                UserDetails userDetails = userDetailsService.loadUserByUsername(claims.get().getSubject());
 
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-            if (jwtService.isValid(token, userDetails)) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
 
@@ -57,11 +59,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 );
 
                 SecurityContextHolder.getContext().setAuthentication(authToken);
+            } catch (UsernameNotFoundException e) {
+                // token outlived its user, continue as anonymous
             }
-
-            filterChain.doFilter(request, response);
         }
 
+        filterChain.doFilter(request, response);
     }
 
 }
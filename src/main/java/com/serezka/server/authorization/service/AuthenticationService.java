@@ -2,14 +2,15 @@ package com.serezka.server.authorization.service;
 
 import com.serezka.server.authorization.database.model.AuthenticationResponse;
 import com.serezka.server.authorization.database.model.User;
-import com.serezka.server.authorization.database.repository.UserRepository;
 import com.serezka.server.authorization.database.service.UserService;
+import com.serezka.server.datasource.ReplicaStickiness;
 import com.serezka.server.money.database.service.BalanceService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -23,26 +24,44 @@ public class AuthenticationService {
     BalanceService balanceService;
     PasswordEncoder passwordEncoder;
     JwtService jwtService;
+    RefreshTokenService refreshTokenService;
     AuthenticationManager authenticationManager;
+    ReplicaStickiness replicaStickiness;
 
     public AuthenticationResponse register(User request) {
         request.setPassword(passwordEncoder.encode(request.getPassword())); // encode pass
         User newUser = userService.save(request); // create user
         balanceService.create(newUser); // create bank balance
-        return new AuthenticationResponse(jwtService.generateToken(newUser));
+        replicaStickiness.stick(newUser.getUsername()); // the replica may not have the new balance yet
+        return tokens(newUser);
     }
 
     public AuthenticationResponse authenticate(String username, String password) {
-        authenticationManager.authenticate(
+        Authentication authentication = authenticationManager.authenticate(
             new UsernamePasswordAuthenticationToken(username, password)
         );
 
-        Optional<User> user = userService.findByUsername(username);
-        if (user.isEmpty()) return new AuthenticationResponse(true, "incorrect username/password");
+        // the user checked against the password, no need to load it again
+        if (!(authentication.getPrincipal() instanceof User user))
+            return new AuthenticationResponse(true, "incorrect username/password");
 
-        String token = jwtService.generateToken(user.get());
+        return tokens(user);
+    }
+
+    /**
+     * Exchange refresh token for new access and refresh tokens, without checking the password
+     *
+     * @param refreshToken refresh token from sign-in, sign-up or previous refresh
+     * @return new tokens, or error if refresh token is unknown, expired or was used already
+     */
+    public AuthenticationResponse refresh(String refreshToken) {
+        Optional<RefreshTokenService.Rotated> rotated = refreshTokenService.rotate(refreshToken);
+        if (rotated.isEmpty()) return new AuthenticationResponse(true, "invalid refresh token");
 
-        return new AuthenticationResponse(token);
+        return new AuthenticationResponse(jwtService.generateToken(rotated.get().user()), rotated.get().token());
     }
 
+    private AuthenticationResponse tokens(User user) {
+        return new AuthenticationResponse(jwtService.generateToken(user), refreshTokenService.issue(user));
+    }
 }
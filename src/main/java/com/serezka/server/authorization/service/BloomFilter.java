@@ -0,0 +1,72 @@
+package com.serezka.server.authorization.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of strings that can only answer "definitely absent" or "maybe present"
+ * Safe for concurrent use without locks, values can't be removed
+ */
+public class BloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    /**
+     * @param expected          number of values the filter is sized for
+     * @param falsePositiveRate chance of "maybe present" for an absent value once {@code expected} values are added
+     */
+    public BloomFilter(long expected, double falsePositiveRate) {
+        if (expected <= 0) throw new IllegalArgumentException("Expected number of values must be positive");
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+
+        long optimal = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (LN2 * LN2));
+        this.words = new AtomicLongArray(Math.toIntExact(Math.max(1, (optimal + 63) >>> 6)));
+        this.bits = (long) words.length() << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expected * LN2));
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++, hash += step) {
+            long index = Math.floorMod(hash, bits);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((words.get(word) & mask) == 0) words.getAndAccumulate(word, mask, (current, bit) -> current | bit);
+        }
+    }
+
+    /**
+     * @return false if value was never added, true if it may have been
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++, hash += step) {
+            long index = Math.floorMod(hash, bits);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finished with the MurmurHash3 mix so all bits depend on all input
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
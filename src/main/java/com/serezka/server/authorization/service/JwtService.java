@@ -1,64 +1,149 @@
 package com.serezka.server.authorization.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.serezka.server.authorization.config.TokenProperties;
 import com.serezka.server.authorization.database.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+/**
+ * Issues and verifies tokens
+ * Signature checks are timed as {@code auth.jwt.verify{result=valid|invalid}}, verified token cache hits
+ * are exported as {@code cache.*{cache=tokens}} metrics
+ */
 @Service
 public class JwtService {
-    private final String SECRET_KEY = "c067eeea69024d8d44f2fe22276759bb9f6bfbcfa83234bd2f1790532d20cd94";
+    private static final String SECRET_KEY = "c067eeea69024d8d44f2fe22276759bb9f6bfbcfa83234bd2f1790532d20cd94";
+    private static final int VERIFIED_CACHE_SIZE = 10_000;
 
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+    private final SecretKey signingKey = Keys.hmacShaKeyFor(Decoders.BASE64URL.decode(SECRET_KEY));
+    private final JwtParser parser = Jwts.parser().verifyWith(signingKey).build();
+
+    // recently verified tokens, each entry expires together with its token
+    private final Cache<String, Claims> verified = Caffeine.newBuilder()
+            .maximumSize(VERIFIED_CACHE_SIZE)
+            .expireAfter(new TokenExpiry())
+            .recordStats()
+            .build();
+
+    private final TokenProperties tokenProperties;
+    private final Timer valid;
+    private final Timer invalid;
+
+    public JwtService(TokenProperties tokenProperties, MeterRegistry meterRegistry) {
+        this.tokenProperties = tokenProperties;
+        this.valid = verifyTimer(meterRegistry, "valid");
+        this.invalid = verifyTimer(meterRegistry, "invalid");
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "tokens");
     }
 
-    public boolean isValid(String token, UserDetails user) {
-        String username = extractUsername(token);
-        return (username.equals(user.getUsername())) && !isTokenExpired(token);
+    /**
+     * Verify token signature and expiration once
+     *
+     * @param token compact JWT
+     * @return claims of valid token, empty if token is malformed, forged or expired
+     */
+    public Optional<Claims> verify(String token) {
+        Claims claims = verified.getIfPresent(token);
+        if (claims != null) return Optional.of(claims);
+
+        Timer.Sample sample = Timer.start();
+        try {
+            claims = parse(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            sample.stop(invalid);
+            return Optional.empty();
+        }
+        sample.stop(valid);
+
+        if (claims.getExpiration() != null) verified.put(token, claims);
+        return Optional.of(claims);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public String extractUsername(String token) {
+        return extractClaim(token, Claims::getSubject);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    public boolean isValid(String token, UserDetails user) {
+        return verify(token)
+                .filter(claims -> claims.getExpiration() != null)
+                .map(claims -> user.getUsername().equals(claims.getSubject()))
+                .orElse(false);
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> resolver){
-        Claims claims = extractAllClaims(token);
+        Claims claims = verify(token).orElseGet(() -> parse(token));
         return resolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts
-            .parser()
-            .verifyWith(getSigninKey())
-            .build()
+    /**
+     * Parse and verify token without cache
+     *
+     * @throws JwtException if token is not valid
+     */
+    Claims parse(String token) {
+        return parser
             .parseSignedClaims(token)
             .getPayload();
     }
 
+    /**
+     * Issue access token valid for {@code authorization.token.access-ttl}
+     */
     public String generateToken(User user) {
+        long now = System.currentTimeMillis();
         return Jwts
             .builder()
             .subject(user.getUsername())
-            .issuedAt(new Date(System.currentTimeMillis()))
-            .expiration(new Date(System.currentTimeMillis() + 24*60*60*1000 ))
-            .signWith(getSigninKey())
+            .issuedAt(new Date(now))
+            .expiration(new Date(now + tokenProperties.getAccessTtl().toMillis()))
+            .signWith(signingKey)
             .compact();
     }
 
-    private SecretKey getSigninKey(){
-        return Keys.hmacShaKeyFor(Decoders.BASE64URL.decode(SECRET_KEY));
+    private static Timer verifyTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("auth.jwt.verify")
+                .description("Time spent checking token signature")
+                .tag("result", result)
+                .register(meterRegistry);
     }
 
+    /**
+     * Keeps verified token in cache until its own expiration
+     */
+    private static class TokenExpiry implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String token, Claims claims, long currentTime) {
+            long left = claims.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, left));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String token, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
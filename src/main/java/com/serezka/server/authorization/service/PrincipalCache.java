@@ -0,0 +1,92 @@
+package com.serezka.server.authorization.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.serezka.server.authorization.config.PrincipalCacheProperties;
+import com.serezka.server.authorization.database.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Users loaded for authenticated requests, keyed by username
+ * Usernames of cached users are indexed by id, so users are evicted by key even after a rename.
+ * Bounded by size and ttl, hit and miss counts are exported as {@code cache.*{cache=principals}} metrics
+ */
+@Component
+public class PrincipalCache {
+    private final Cache<String, User> users;
+    // cached username by user id, changed together with the entry under its lock
+    private final ConcurrentMap<Long, String> usernames = new ConcurrentHashMap<>();
+
+    public PrincipalCache(PrincipalCacheProperties properties, MeterRegistry meterRegistry) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(properties.getSize())
+                .expireAfterWrite(properties.getTtl())
+                .evictionListener((String username, User user, RemovalCause cause) -> unindex(username, user))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "principals");
+    }
+
+    /**
+     * Get cached user or load it
+     * Missing users are not cached
+     *
+     * @param username username
+     * @param loader   function to load user from the database
+     * @return user
+     */
+    public Optional<User> get(String username, Function<String, Optional<User>> loader) {
+        return Optional.ofNullable(users.get(username, key -> {
+            User user = loader.apply(key).orElse(null);
+            if (user != null && user.getId() != null) usernames.put(user.getId(), key);
+            return user;
+        }));
+    }
+
+    /**
+     * Evict user now and once more after the current transaction commits,
+     * so a load racing with the write can't keep the old state cached
+     *
+     * @param user changed or deleted user
+     */
+    public void evict(User user) {
+        evictNow(user);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(user);
+                }
+            });
+    }
+
+    private void evictNow(User user) {
+        if (user.getUsername() != null) evictNow(user.getUsername());
+        // username itself may have changed
+        String cached = user.getId() == null ? null : usernames.get(user.getId());
+        if (cached != null) evictNow(cached);
+    }
+
+    private void evictNow(String username) {
+        users.asMap().computeIfPresent(username, (key, user) -> {
+            unindex(key, user);
+            return null;
+        });
+    }
+
+    private void unindex(String username, User user) {
+        if (user != null && user.getId() != null) usernames.remove(user.getId(), username);
+    }
+}
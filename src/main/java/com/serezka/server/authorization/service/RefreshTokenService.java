@@ -0,0 +1,119 @@
+package com.serezka.server.authorization.service;
+
+import com.serezka.server.authorization.config.TokenProperties;
+import com.serezka.server.authorization.database.model.RefreshToken;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.RefreshTokenRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Issues and rotates refresh tokens
+ * <p>
+ * Tokens are 256 random bits, so they are stored as a plain SHA-256 and looked up by it, no password hashing
+ * is needed to check them. Every token can be used once: refreshing marks it used and issues the next token
+ * of its family. A used token coming back means it was stolen, then the whole family is revoked and its owner
+ * has to sign in again.
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class RefreshTokenService {
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    RefreshTokenRepository refreshTokenRepository;
+    TransactionTemplate transactionTemplate;
+    TokenProperties tokenProperties;
+
+    /**
+     * Token issued by rotation together with its owner
+     */
+    public record Rotated(User user, String token) { }
+
+    /**
+     * Issue first token of a new family, on sign-in or sign-up
+     *
+     * @param user user to issue token to
+     * @return token to give to the client, only its hash is stored
+     */
+    @Transactional
+    public String issue(User user) {
+        return issue(user, UUID.randomUUID());
+    }
+
+    /**
+     * Exchange token for the next one of its family
+     *
+     * @param token token from the client
+     * @return owner and new token, empty if token is unknown, expired or was used already
+     */
+    @Transactional
+    public Optional<Rotated> rotate(String token) {
+        Optional<RefreshToken> stored = refreshTokenRepository.findByTokenHash(hash(token));
+        if (stored.isEmpty()) return Optional.empty();
+
+        RefreshToken current = stored.get();
+        if (current.isUsed()) {
+            int revoked = refreshTokenRepository.deleteByFamily(current.getFamily());
+            log.warn("Used refresh token of user {} was presented again, revoked {} tokens", current.getUser().getId(), revoked);
+            return Optional.empty();
+        }
+
+        if (current.getExpires().isBefore(Instant.now())) {
+            refreshTokenRepository.delete(current);
+            return Optional.empty();
+        }
+
+        current.setUsed(true);
+        return Optional.of(new Rotated(current.getUser(), issue(current.getUser(), current.getFamily())));
+    }
+
+    /**
+     * Remove expired tokens, used ones are kept until then to detect their reuse
+     */
+    @Scheduled(fixedDelayString = "PT1H", initialDelayString = "PT1M")
+    public void purgeExpired() {
+        int removed = transactionTemplate.execute(status -> refreshTokenRepository.deleteExpiredBefore(Instant.now()));
+        if (removed > 0) log.info("Removed {} expired refresh tokens", removed);
+    }
+
+    private String issue(User user, UUID family) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(RefreshToken.builder()
+                .tokenHash(hash(token))
+                .user(user)
+                .family(family)
+                .expires(Instant.now().plus(tokenProperties.getRefreshTtl()))
+                .build());
+        return token;
+    }
+
+    private static String hash(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.serezka.server.authorization.service;
+
+import com.serezka.server.authorization.config.SignupFilterProperties;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bloom filters of usernames and mails of registered users, so checks of new names don't need the database
+ * <p>
+ * Filters are filled with a streaming scan of users once the application is ready and with every user saved
+ * afterwards. Until the scan is done every name is reported as maybe taken. Users registered by other nodes
+ * or deleted users are not reflected, unique constraints of the users table are the final guard.
+ */
+@Component
+@Log4j2
+public class SignupFilter {
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SignupFilterProperties properties;
+    private final BloomFilter usernames;
+    private final BloomFilter mails;
+    private volatile boolean loaded;
+
+    public SignupFilter(DataSource dataSource, PlatformTransactionManager transactionManager, SignupFilterProperties properties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+
+        // Postgres streams rows through a cursor only inside a transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+
+        this.properties = properties;
+        this.usernames = new BloomFilter(properties.getExpectedUsers(), properties.getFalsePositiveRate());
+        this.mails = new BloomFilter(properties.getExpectedUsers(), properties.getFalsePositiveRate());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        AtomicLong users = new AtomicLong();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query("SELECT username, mail FROM users", row -> {
+            usernames.put(row.getString("username"));
+            mails.put(row.getString("mail"));
+            users.incrementAndGet();
+        }));
+        loaded = true;
+
+        log.info("Loaded {} users into signup filter", users.get());
+        if (users.get() > properties.getExpectedUsers())
+            log.warn("Signup filter is sized for {} users, raise authorization.signup-filter.expected-users", properties.getExpectedUsers());
+    }
+
+    /**
+     * Add names of a user being saved
+     * Call before the insert, so there is no moment when the user exists and the filter says it doesn't
+     */
+    public void add(String username, String mail) {
+        if (username != null) usernames.put(username);
+        if (mail != null) mails.put(mail);
+    }
+
+    /**
+     * @return false if no registered user has this username
+     */
+    public boolean mightHaveUsername(String username) {
+        return !loaded || usernames.mightContain(username);
+    }
+
+    /**
+     * @return false if no registered user has this mail
+     */
+    public boolean mightHaveMail(String mail) {
+        return !loaded || mails.mightContain(mail);
+    }
+}
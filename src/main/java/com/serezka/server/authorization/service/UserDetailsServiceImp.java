@@ -10,14 +10,17 @@ import org.springframework.stereotype.Service;
 public class UserDetailsServiceImp implements UserDetailsService{
 
     private final UserRepository repository;
+    private final PrincipalCache principalCache;
 
-    public UserDetailsServiceImp(UserRepository repository){
+    public UserDetailsServiceImp(UserRepository repository, PrincipalCache principalCache){
         this.repository = repository;
+        this.principalCache = principalCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return repository.findByUsername(username).orElseThrow(() -> new UsernameNotFoundException("User with this name not found"));
+        return principalCache.get(username, repository::findByUsername)
+                .orElseThrow(() -> new UsernameNotFoundException("User with this name not found"));
     }
     
 }
@@ -0,0 +1,254 @@
+package com.serezka.server.authorization.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.serezka.server.authorization.config.ImportProperties;
+import com.serezka.server.authorization.controller.dto.UserRegistrationDto;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserIdentity;
+import com.serezka.server.authorization.database.service.UserService;
+import com.serezka.server.money.database.service.BalanceService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Registration of many users at once, for migrating customers of partners
+ * <p>
+ * Records are read one per line and handled in chunks: duplicates of a whole chunk are found with one query,
+ * passwords are hashed in parallel on a fixed pool, and users with their balances are inserted in one
+ * batched transaction. If the chunk can't be committed, for example because a clashing user signed up
+ * in between, its records are inserted one by one so only the clashing ones fail.
+ */
+@Service
+@Log4j2
+public class UserImportService {
+    private final UserService userService;
+    private final BalanceService balanceService;
+    private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader reader;
+    private final int chunkSize;
+    private final ExecutorService hashExecutor;
+
+    public enum Status {
+        CREATED,
+        /**
+         * Line is not a registration record or misses required fields
+         */
+        INVALID,
+        /**
+         * Username or mail is registered already or repeats an earlier record
+         */
+        DUPLICATE,
+        /**
+         * Could not be inserted because of an error
+         */
+        FAILED
+    }
+
+    /**
+     * Outcome of one record
+     *
+     * @param line    number of the line the record was read from, starting at 1
+     * @param login   username of the record, null if the line couldn't be read
+     * @param status  outcome
+     * @param message reason of the failure, null if created
+     */
+    public record Result(long line, String login, Status status, String message) { }
+
+    // record being imported, password is hashed once its chunk passes the duplicate check
+    private static final class Entry {
+        final long line;
+        final UserRegistrationDto record;
+        String password;
+        Result result;
+
+        Entry(long line, UserRegistrationDto record) {
+            this.line = line;
+            this.record = record;
+        }
+
+        void complete(Status status, String message) {
+            result = new Result(line, record == null ? null : record.login(), status, message);
+        }
+
+        User toUser() {
+            User user = record.toUser();
+            user.setPassword(password);
+            return user;
+        }
+    }
+
+    public UserImportService(UserService userService, BalanceService balanceService, PasswordEncoder passwordEncoder,
+                             TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                             ImportProperties properties) {
+        this.userService = userService;
+        this.balanceService = balanceService;
+        this.passwordEncoder = passwordEncoder;
+        this.transactionTemplate = transactionTemplate;
+        this.reader = objectMapper.readerFor(UserRegistrationDto.class);
+        this.chunkSize = properties.getChunkSize();
+
+        int threads = properties.getHashThreads() > 0 ? properties.getHashThreads() : Runtime.getRuntime().availableProcessors();
+        this.hashExecutor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("user-import-", 0).factory());
+    }
+
+    @PreDestroy
+    public void close() {
+        hashExecutor.shutdownNow();
+    }
+
+    /**
+     * Register every record of input, one {@link UserRegistrationDto} JSON object per line
+     * Blank lines are skipped, every other line gets a result
+     *
+     * @param input    records to import
+     * @param listener called with results of every chunk in line order, once the chunk is committed
+     * @return number of created users
+     * @throws UncheckedIOException if input can't be read
+     */
+    public long importUsers(Reader input, Consumer<List<Result>> listener) {
+        long lines = 0;
+        long records = 0;
+        long created = 0;
+
+        try (BufferedReader lineReader = new BufferedReader(input)) {
+            List<Entry> chunk = new ArrayList<>(chunkSize);
+            String text;
+            while ((text = lineReader.readLine()) != null) {
+                lines++;
+                if (text.isBlank()) continue;
+
+                chunk.add(parse(lines, text));
+                if (chunk.size() < chunkSize) continue;
+
+                records += chunk.size();
+                created += process(chunk, listener);
+                chunk = new ArrayList<>(chunkSize);
+            }
+
+            if (!chunk.isEmpty()) {
+                records += chunk.size();
+                created += process(chunk, listener);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Imported {} users, {} records rejected", created, records - created);
+        return created;
+    }
+
+    private Entry parse(long line, String text) {
+        UserRegistrationDto record;
+        try {
+            record = reader.readValue(text);
+        } catch (JsonProcessingException e) {
+            Entry entry = new Entry(line, null);
+            entry.complete(Status.INVALID, "malformed record");
+            return entry;
+        }
+
+        Entry entry = new Entry(line, record);
+        if (record == null || record.login() == null || record.password() == null || record.mail() == null)
+            entry.complete(Status.INVALID, "missing required fields");
+        return entry;
+    }
+
+    /**
+     * @return number of created users
+     */
+    private long process(List<Entry> chunk, Consumer<List<Result>> listener) {
+        List<Entry> accepted = rejectDuplicates(chunk);
+        hashPasswords(accepted);
+
+        if (!accepted.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        balanceService.createAll(userService.saveAll(accepted.stream().map(Entry::toUser).toList())));
+                accepted.forEach(entry -> entry.complete(Status.CREATED, null));
+            } catch (RuntimeException e) {
+                log.warn("Failed to insert chunk of {} users, inserting them one by one: {}", accepted.size(), e.getMessage());
+                accepted.forEach(this::insert);
+            }
+        }
+
+        log.debug("Processed {} import records up to line {}", chunk.size(), chunk.getLast().line);
+        List<Result> results = chunk.stream().map(entry -> entry.result).toList();
+        listener.accept(results);
+        return results.stream().filter(result -> result.status() == Status.CREATED).count();
+    }
+
+    /**
+     * Complete records clashing with registered users or earlier records of the chunk
+     *
+     * @return records left to insert
+     */
+    private List<Entry> rejectDuplicates(List<Entry> chunk) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> mails = new HashSet<>();
+        for (Entry entry : chunk)
+            if (entry.result == null) {
+                usernames.add(entry.record.login());
+                mails.add(entry.record.mail());
+            }
+
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenMails = new HashSet<>();
+        for (UserIdentity taken : userService.findTaken(usernames, mails)) {
+            takenUsernames.add(taken.getUsername());
+            takenMails.add(taken.getMail());
+        }
+
+        List<Entry> accepted = new ArrayList<>();
+        for (Entry entry : chunk) {
+            if (entry.result != null) continue;
+
+            if (takenMails.contains(entry.record.mail()))
+                entry.complete(Status.DUPLICATE, "user with this mail already registered");
+            else if (takenUsernames.contains(entry.record.login()))
+                entry.complete(Status.DUPLICATE, "user with this username already exists");
+            else {
+                // later records of the chunk can't take them anymore
+                takenMails.add(entry.record.mail());
+                takenUsernames.add(entry.record.login());
+                accepted.add(entry);
+            }
+        }
+        return accepted;
+    }
+
+    private void hashPasswords(List<Entry> entries) {
+        CompletableFuture.allOf(entries.stream()
+                .map(entry -> CompletableFuture.runAsync(() -> entry.password = passwordEncoder.encode(entry.record.password()), hashExecutor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void insert(Entry entry) {
+        try {
+            // new instance, ids given to the rolled back ones are gone
+            transactionTemplate.executeWithoutResult(status -> balanceService.create(userService.save(entry.toUser())));
+            entry.complete(Status.CREATED, null);
+        } catch (RuntimeException e) {
+            log.warn("Failed to import user {} from line {}: {}", entry.record.login(), entry.line, e.getMessage());
+            entry.complete(Status.FAILED, "failed to register user");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.serezka.server.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * Puts {@link ConnectionLimitingDataSource} in front of the application datasource
+ * Enable together with {@code spring.threads.virtual.enabled}, where request threads are no longer bounded by Tomcat
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.limiter", name = "enabled", havingValue = "true")
+@Log4j2
+public class ConnectionLimiterConfiguration {
+    @Bean
+    public static BeanPostProcessor connectionLimiterPostProcessor(ObjectProvider<ConnectionLimiterProperties> properties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                // proxies and routers reach a pool that is limited already
+                if (!(bean instanceof DataSource dataSource) || bean instanceof DelegatingDataSource || bean instanceof AbstractRoutingDataSource) return bean;
+
+                ConnectionLimiterProperties limiter = properties.getObject();
+                int permits = limiter.getPermits();
+                if (permits <= 0 && dataSource instanceof HikariDataSource hikari) permits = hikari.getMaximumPoolSize();
+                if (permits <= 0) return bean;
+
+                log.info("Limiting datasource {} to {} concurrent connections", beanName, permits);
+                return new ConnectionLimitingDataSource(dataSource, permits, limiter.getTimeout());
+            }
+        };
+    }
+}
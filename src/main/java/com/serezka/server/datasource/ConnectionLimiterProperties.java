@@ -0,0 +1,33 @@
+package com.serezka.server.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Connection limiter settings
+ * Bound from {@code datasource.limiter.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "datasource.limiter")
+@Getter @Setter
+public class ConnectionLimiterProperties {
+    /**
+     * Put limiter in front of the datasource
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of connections that may be borrowed at once, 0 to match the pool size
+     */
+    private int permits = 0;
+
+    /**
+     * How long a caller waits for a permit before the request fails
+     */
+    private Duration timeout = Duration.ofSeconds(5);
+}
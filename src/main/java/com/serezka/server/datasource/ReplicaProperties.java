@@ -0,0 +1,48 @@
+package com.serezka.server.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Read replica settings
+ * Bound from {@code datasource.replica.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "datasource.replica")
+@Getter @Setter
+public class ReplicaProperties {
+    /**
+     * Send read-only transactions to the replica
+     */
+    private boolean enabled = false;
+
+    private String url;
+    private String username;
+    private String password;
+
+    /**
+     * Size of the replica connection pool
+     */
+    private int maximumPoolSize = 10;
+
+    /**
+     * Staleness tolerance, reads go to the primary while the replica lags behind it more than this
+     */
+    private Duration maxLag = Duration.ofSeconds(2);
+
+    /**
+     * How often replica lag is measured
+     */
+    private Duration lagCheckInterval = Duration.ofSeconds(1);
+
+    /**
+     * How long reads of a user go to the primary after the user changed something, so they see their own writes
+     * Keep it above max-lag
+     */
+    private Duration stickiness = Duration.ofSeconds(5);
+}
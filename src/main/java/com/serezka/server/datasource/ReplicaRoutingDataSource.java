@@ -0,0 +1,93 @@
+package com.serezka.server.datasource;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Datasource that sends read-only transactions to a replica while it keeps up with the primary
+ * <p>
+ * Everything else goes to the primary: writes, reads of users who wrote recently (see {@link ReplicaStickiness}),
+ * reads while the replica lags more than {@code datasource.replica.max-lag} or its lag is unknown, and default
+ * transactions of Spring Data repositories. Those are read-only too, but they also load state writers act on,
+ * so only service methods asking for a read-only transaction themselves are served by the replica.
+ * Must be wrapped in a {@link LazyConnectionDataSourceProxy}, transactions take their connection before
+ * the read-only flag is set
+ */
+@Log4j2
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    enum Target { PRIMARY, REPLICA }
+
+    // transactions started by repository proxies are named after SimpleJpaRepository methods
+    private static final String REPOSITORY_TRANSACTION_PREFIX = "org.springframework.data.";
+
+    // zero when the replica replayed everything it received, so an idle primary doesn't look like lag
+    private static final String LAG_QUERY = """
+            SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE (EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint END
+            """;
+
+    private final JdbcTemplate replica;
+    private final Duration maxLag;
+    private final ReplicaStickiness stickiness;
+    private volatile boolean replicaFresh;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaProperties properties, ReplicaStickiness stickiness) {
+        this.replica = new JdbcTemplate(replica);
+        this.maxLag = properties.getMaxLag();
+        this.stickiness = stickiness;
+
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return useReplica() ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    private boolean useReplica() {
+        if (!replicaFresh || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) return false;
+
+        String name = TransactionSynchronizationManager.getCurrentTransactionName();
+        if (name != null && name.startsWith(REPOSITORY_TRANSACTION_PREFIX)) return false;
+
+        return !stickiness.isCurrentUserSticky();
+    }
+
+    /**
+     * Measure how far the replica is behind the primary
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.lag-check-interval:PT1S}")
+    public void checkLag() {
+        Long millis;
+        try {
+            millis = replica.queryForObject(LAG_QUERY, Long.class);
+        } catch (DataAccessException e) {
+            if (replicaFresh) log.warn("Failed to check replica lag, reading from primary: {}", e.getMessage());
+            replicaFresh = false;
+            return;
+        }
+
+        updateLag(millis == null ? null : Duration.ofMillis(millis));
+    }
+
+    /**
+     * @param lag measured replica lag, null if unknown
+     */
+    void updateLag(Duration lag) {
+        boolean fresh = lag != null && lag.compareTo(maxLag) <= 0;
+        if (fresh && !replicaFresh) log.info("Replica lag is {}, reading from replica", lag);
+        if (!fresh && replicaFresh) log.warn("Replica lag is {}, over {}, reading from primary", lag == null ? "unknown" : lag, maxLag);
+        replicaFresh = fresh;
+    }
+}
@@ -0,0 +1,55 @@
+package com.serezka.server.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Users who changed something recently, their reads stay on the primary until the replica has surely caught up
+ * Keyed by username, entries expire after {@code datasource.replica.stickiness}
+ */
+@Component
+public class ReplicaStickiness {
+    private final Cache<String, Boolean> users;
+
+    public ReplicaStickiness(ReplicaProperties properties) {
+        this.users = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getStickiness())
+                .build();
+    }
+
+    /**
+     * Keep reads of user on the primary for a while
+     *
+     * @param username user who just wrote
+     */
+    public void stick(String username) {
+        users.put(username, Boolean.TRUE);
+    }
+
+    /**
+     * Keep reads of the authenticated user on the primary for a while, does nothing for anonymous requests
+     */
+    public void stickCurrentUser() {
+        String username = currentUsername();
+        if (username != null) stick(username);
+    }
+
+    /**
+     * @return true if the authenticated user wrote recently
+     */
+    public boolean isCurrentUserSticky() {
+        String username = currentUsername();
+        return username != null && users.getIfPresent(username) != null;
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken)
+            return null;
+        return authentication.getName();
+    }
+}
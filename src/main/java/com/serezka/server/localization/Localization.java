@@ -6,26 +6,29 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.context.NoSuchMessageException;
-import org.springframework.context.support.ResourceBundleMessageSource;
-import org.springframework.stereotype.Component;
 
-import java.util.Locale;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class for localization
  * Allows to get localized messages
+ * <p>
+ * Bundles {@code lang/lang} of every {@link Type} are read once into immutable tables, messages missing
+ * in a locale are taken from the default one. Lookups are plain map reads, codes without a message
+ * resolve to themselves and are logged only the first time.
  * @version 1.0
  */
-@Component
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Log4j2
 public class Localization {
+    private static final String BASENAME = "lang/lang";
+
     @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
     @RequiredArgsConstructor @Getter
     public enum Type {
-        RU("русский", Locale.of("ru_RU")),
-        US("english", Locale.of("en_US"));
+        RU("русский", Locale.of("ru", "RU")),
+        US("english", Locale.of("en", "US"));
 
         String name;
         Locale locale;
@@ -33,22 +36,27 @@ public class Localization {
         public static final Type DEFAULT = Type.RU;
     }
 
-    ResourceBundleMessageSource messageSource;
+    // messages by code for every type, never changed after construction
+    EnumMap<Type, Map<String, String>> messages = new EnumMap<>(Type.class);
+    // codes looked up without a message
+    Set<String> missing = ConcurrentHashMap.newKeySet();
 
     private Localization() {
-        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
-        messageSource.setBasename("lang/lang");
-        messageSource.setDefaultLocale(Type.DEFAULT.getLocale());
-        messageSource.setDefaultEncoding("UTF-8");
-
-        this.messageSource = messageSource;
+        Map<String, String> defaults = load(Type.DEFAULT);
+        for (Type type : Type.values()) {
+            Map<String, String> table = new HashMap<>(defaults);
+            if (type != Type.DEFAULT) table.putAll(load(type));
+            messages.put(type, Map.copyOf(table));
+        }
     }
 
-    private static Localization instance = null;
-
     public static Localization getInstance() {
-        if (instance == null) instance = new Localization();
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    // loaded by the first getInstance(), class initialization makes it safe to share between threads
+    private static final class Holder {
+        static final Localization INSTANCE = new Localization();
     }
 
     /**
@@ -65,17 +73,14 @@ public class Localization {
      * Get localized message
      * @param code - message code
      * @param localization - localization type
-     * @return localized message
+     * @return localized message, code itself if there is no such message
      */
     public String get(String code, Type localization) {
-        if (localization == null) return get(code);
+        String message = messages.get(localization == null ? Type.DEFAULT : localization).get(code);
+        if (message != null) return message;
 
-        try {
-            return messageSource.getMessage(code, null, localization.getLocale());
-        } catch (NoSuchMessageException e) {
-            log.warn(e.getMessage());
-            return code;
-        }
+        if (!missing.contains(code) && missing.add(code)) log.warn("No message found under code '{}'", code);
+        return code;
     }
 
     /**
@@ -84,11 +89,20 @@ public class Localization {
      * @return localized message with default locale
      */
     public String get(String code) {
+        return get(code, Type.DEFAULT);
+    }
+
+    private static Map<String, String> load(Type type) {
         try {
-            return messageSource.getMessage(code, null, Type.DEFAULT.getLocale());
-        } catch (NoSuchMessageException e) {
-            log.warn(e.getMessage());
-            return code;
+            ResourceBundle bundle = ResourceBundle.getBundle(BASENAME, type.getLocale(),
+                    ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES));
+
+            Map<String, String> table = new HashMap<>();
+            for (String key : bundle.keySet()) table.put(key, bundle.getString(key));
+            return table;
+        } catch (MissingResourceException e) {
+            log.warn("No messages found for locale {}", type.getLocale());
+            return Map.of();
         }
     }
 }
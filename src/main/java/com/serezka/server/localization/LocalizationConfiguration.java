@@ -18,6 +18,14 @@ public class LocalizationConfiguration {
         return messageSource;
     }
 
+    /**
+     * Catalog of {@code lang/lang} messages, compiled once
+     */
+    @Bean
+    public Localization localization() {
+        return Localization.getInstance();
+    }
+
     @Bean
     public SessionLocaleResolver localeResolver() {
         SessionLocaleResolver slr = new SessionLocaleResolver();
@@ -0,0 +1,29 @@
+package com.serezka.server.money.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Balance cache settings
+ * Bound from {@code money.balance-cache.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "money.balance-cache")
+@Getter @Setter
+public class BalanceCacheProperties {
+    /**
+     * Maximum number of cached balances
+     */
+    private long size = 100_000;
+
+    /**
+     * How long a balance is served without going to the database,
+     * bounds staleness of transfers committed on other nodes
+     */
+    private Duration ttl = Duration.ofMinutes(1);
+}
@@ -0,0 +1,45 @@
+package com.serezka.server.money.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * In-memory transfer engine settings, used when {@code money.transfer.mode} is {@code memory}
+ * Bound from {@code money.engine.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "money.engine")
+@Getter @Setter
+public class EngineProperties {
+    /**
+     * Number of shards, each owned by one thread, 0 to match available processors
+     */
+    private int shards = 0;
+
+    /**
+     * Directory of write-ahead log segments
+     */
+    private Path walDirectory = Path.of("wal");
+
+    /**
+     * Size of one memory-mapped log segment
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Maximum number of logged transfers written to the database in one transaction
+     */
+    private int writerBatchSize = 1000;
+
+    /**
+     * How long a caller waits for its transfer to become durable
+     */
+    private Duration ackTimeout = Duration.ofSeconds(5);
+}
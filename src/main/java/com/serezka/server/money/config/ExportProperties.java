@@ -0,0 +1,21 @@
+package com.serezka.server.money.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Export settings
+ * Bound from {@code money.export.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "money.export")
+@Getter @Setter
+public class ExportProperties {
+    /**
+     * Rows fetched from the database cursor at once
+     */
+    private int fetchSize = 1000;
+}
@@ -0,0 +1,28 @@
+package com.serezka.server.money.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Idempotency-Key settings
+ * Bound from {@code money.idempotency.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "money.idempotency")
+@Getter @Setter
+public class IdempotencyProperties {
+    /**
+     * How long a stored response is replayed for the same key
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * Maximum number of responses kept in memory
+     */
+    private long cacheSize = 100_000;
+}
@@ -0,0 +1,24 @@
+package com.serezka.server.money.config;
+
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.EngineCheckpointRepository;
+import com.serezka.server.money.database.service.LedgerService;
+import com.serezka.server.money.engine.MemoryTransferEngine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Starts {@link MemoryTransferEngine} when {@code money.transfer.mode} is {@code memory}
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "money.transfer", name = "mode", havingValue = "memory")
+public class MemoryEngineConfiguration {
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public MemoryTransferEngine memoryTransferEngine(EngineProperties properties, BalanceRepository balanceRepository,
+                                                     EngineCheckpointRepository checkpointRepository,
+                                                     LedgerService ledgerService, TransactionTemplate transactionTemplate) {
+        return new MemoryTransferEngine(properties, balanceRepository, checkpointRepository, ledgerService, transactionTemplate);
+    }
+}
@@ -0,0 +1,147 @@
+package com.serezka.server.money.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Transfer settings
+ * Bound from {@code money.transfer.*}
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+@ConfigurationProperties(prefix = "money.transfer")
+@Getter @Setter
+public class TransferProperties {
+    /**
+     * Strategy used by {@code BalanceService} to move money between balances
+     */
+    private Mode mode = Mode.DEFAULT;
+
+    /**
+     * Settings of {@code POST /money/batch}
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * Settings of striped hot balances
+     */
+    private Stripes stripes = new Stripes();
+
+    /**
+     * Settings of optimistic mode
+     */
+    private Optimistic optimistic = new Optimistic();
+
+    /**
+     * Settings of {@code POST /money/transfers}
+     */
+    private Async async = new Async();
+
+    public enum Mode {
+        /**
+         * Lock loaded entities with {@code SELECT ... FOR UPDATE} and save them back
+         */
+        PESSIMISTIC,
+        /**
+         * Two conditional {@code UPDATE} statements applied in id order, funds checked by the database
+         */
+        GUARDED,
+        /**
+         * Read balances without locks and write them back only if their version is unchanged,
+         * conflicting transfers are retried and contended balances fall back to row locks
+         */
+        OPTIMISTIC,
+        /**
+         * In-memory sharded engine with a write-ahead log, the database is updated asynchronously
+         */
+        MEMORY;
+
+        public static final Mode DEFAULT = GUARDED;
+    }
+
+    @Getter @Setter
+    public static class Batch {
+        /**
+         * Maximum number of transfers accepted in one request
+         */
+        private int maxItems = 10_000;
+
+        /**
+         * Number of transfers applied in one transaction
+         */
+        private int chunkSize = 500;
+    }
+
+    @Getter @Setter
+    public static class Stripes {
+        /**
+         * Maximum number of slots one balance may be split into
+         */
+        private int max = 64;
+
+        /**
+         * Delay between rebalancing runs, ISO-8601
+         */
+        private Duration rebalanceInterval = Duration.ofSeconds(10);
+    }
+
+    @Getter @Setter
+    public static class Optimistic {
+        /**
+         * Attempts of one transfer before it falls back to row locks
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * Upper bound of the delay before the first retry, doubled on every next one
+         */
+        private Duration initialBackoff = Duration.ofMillis(2);
+
+        /**
+         * Upper bound of the delay before any retry
+         */
+        private Duration maxBackoff = Duration.ofMillis(100);
+
+        /**
+         * Conflicts on one balance within the window after which it is locked instead
+         */
+        private int fallbackThreshold = 10;
+
+        /**
+         * Window conflicts are counted in, starting from the first one
+         */
+        private Duration fallbackWindow = Duration.ofSeconds(1);
+
+        /**
+         * How long a contended balance is locked before optimistic transfers are tried again
+         */
+        private Duration fallbackDuration = Duration.ofSeconds(30);
+    }
+
+    @Getter @Setter
+    public static class Async {
+        /**
+         * Maximum number of queued transfers, new ones are rejected while the queue is full
+         */
+        private int queueCapacity = 10_000;
+
+        /**
+         * Maximum number of queued transfers applied in one transaction
+         */
+        private int batchSize = 500;
+
+        /**
+         * How long outcome of a transfer can be polled after it was submitted
+         */
+        private Duration resultTtl = Duration.ofMinutes(10);
+
+        /**
+         * Upper bound of the time a poll waits for the outcome
+         */
+        private Duration maxWait = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,62 @@
+package com.serezka.server.money.controller;
+
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.service.UserService;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.service.BalanceService;
+import com.serezka.server.money.database.service.StripedBalanceService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Optional;
+
+/**
+ * Controller for account administration, available to admins only
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+
+@RestController
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class AccountAdminController {
+    UserService userService;
+    BalanceService balanceService;
+    StripedBalanceService stripedBalanceService;
+
+    /**
+     * Split balance of a hot account into several rows, so concurrent transfers to it don't queue on one row lock
+     *
+     * @param username account owner
+     * @param count    number of slots, 1 turns striping off
+     * @return response with error message if failed and success message if succeeded
+     */
+    @PutMapping("/admin/accounts/{username}/stripes")
+    public ResponseEntity<String> setStripes(@PathVariable String username, @RequestParam int count) {
+        Optional<User> user = userService.findByUsername(username);
+        if (user.isEmpty())
+            return ResponseEntity.badRequest()
+                    .body(String.format("User %s not exists", username));
+
+        Optional<Balance> balance = balanceService.findByUser(user.get());
+        if (balance.isEmpty()) return ResponseEntity.badRequest()
+                .body(String.format("Balance not found for user %s", user.get().getId()));
+
+        try {
+            stripedBalanceService.stripe(balance.get().getId(), count);
+            return ResponseEntity.ok().body(String.format("Balance of %s is split into %d slots", username, count));
+        } catch (IllegalArgumentException e) {
+            log.error("Failed to stripe balance of {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
@@ -1,23 +1,49 @@
 package com.serezka.server.money.controller;
 
 import com.serezka.server.authorization.database.model.User;
-import com.serezka.server.authorization.database.service.UserService;
+import com.serezka.server.localization.Localization;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.controller.dto.BatchTransferResponse;
+import com.serezka.server.money.controller.dto.HistoryResponse;
 import com.serezka.server.money.controller.dto.TransferDto;
+import com.serezka.server.money.controller.dto.TransferResultDto;
+import com.serezka.server.money.controller.dto.TransferStatusDto;
 import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.model.TransferStatus;
 import com.serezka.server.money.database.service.BalanceService;
+import com.serezka.server.money.database.repository.HistoryEntry;
+import com.serezka.server.money.database.repository.TransferParties;
+import com.serezka.server.money.database.service.BatchTransferService;
+import com.serezka.server.money.database.service.IdempotencyService;
+import com.serezka.server.money.database.service.InsufficientFundsException;
+import com.serezka.server.money.database.service.LedgerService;
+import com.serezka.server.money.database.service.TransferQueue;
+import com.serezka.server.money.metrics.TransferMetrics;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller for balance operations
@@ -31,60 +57,221 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Log4j2
 public class BalanceController {
+    private static final int MAX_HISTORY_LIMIT = 100;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    // clients match these bodies, so they stay English whatever User.localization says
+    private static final Localization.Type RESPONSE_LANGUAGE = Localization.Type.US;
+
     BalanceService balanceService;
-    UserService userService;
+    BatchTransferService batchTransferService;
+    LedgerService ledgerService;
+    IdempotencyService idempotencyService;
+    TransferProperties transferProperties;
+    TransferMetrics transferMetrics;
+    TransferQueue transferQueue;
+    Localization localization;
 
     /**
      * Get user balance
      *
      * @param user authenticated user
-     * @return user balance
+     * @return user balance as a decimal string
      */
     @GetMapping("/money")
-    public ResponseEntity<Double> getBalance(@AuthenticationPrincipal User user) {
-        Optional<Balance> balance = balanceService.findByUser(user);
+    public ResponseEntity<Money> getBalance(@AuthenticationPrincipal User user) {
+        Optional<Money> balance = balanceService.balance(user);
 
         if (balance.isEmpty()) {
             log.error("Failed to get balance: balance not found for user {}", user.getId());
             return ResponseEntity.badRequest()
-                    .body(0D);
+                    .body(Money.ZERO);
         }
 
-        log.info("User {} balance is {}$", user.getUsername(), balance.get().getBalance());
+        log.info("User {} balance is {}$", user.getUsername(), balance.get());
 
-        return ResponseEntity.ok().body(balance.get().getBalance().doubleValue());
+        return ResponseEntity.ok().body(balance.get());
+    }
+
+    /**
+     * Get user balance history, newest first
+     *
+     * @param user   authenticated user
+     * @param before id of last entry of previous page, absent for first page
+     * @param limit  page size
+     * @return page of history entries
+     */
+    @GetMapping("/money/history")
+    public ResponseEntity<HistoryResponse> getHistory(@AuthenticationPrincipal User user,
+                                                      @RequestParam(required = false) Long before,
+                                                      @RequestParam(defaultValue = "20") int limit) {
+        if (limit <= 0 || limit > MAX_HISTORY_LIMIT)
+            return ResponseEntity.badRequest()
+                    .body(new HistoryResponse(List.of(), null));
+
+        Optional<Balance> balance = balanceService.findByUser(user);
+
+        if (balance.isEmpty()) {
+            log.error("Failed to get history: balance not found for user {}", user.getId());
+            return ResponseEntity.badRequest()
+                    .body(new HistoryResponse(List.of(), null));
+        }
+
+        List<HistoryEntry> entries = ledgerService.history(balance.get().getId(), before, limit);
+        Long next = entries.size() < limit ? null : entries.get(entries.size() - 1).getId();
+
+        return ResponseEntity.ok().body(new HistoryResponse(entries, next));
     }
 
     /**
      * Add money to user balance
+     * Requests repeated with the same Idempotency-Key get the stored response and don't transfer again
      *
-     * @param user     authenticated user
-     * @param transfer transfer data
-     * @return response with error message if transfer failed and success message if succeeded
+     * @param user           authenticated user
+     * @param transfer       transfer data
+     * @param idempotencyKey optional client generated key of this transfer
+     * @return success message, 400 with error message if transfer was rejected or 500 if it failed unexpectedly
      */
     @PostMapping("/money")
-    public ResponseEntity<String> addMoney(@AuthenticationPrincipal User user, @RequestBody TransferDto transfer) {
-        Optional<User> toUser = userService.findByUsername(transfer.to());
+    public ResponseEntity<String> addMoney(@AuthenticationPrincipal User user, @RequestBody TransferDto transfer,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey == null) return transfer(user, transfer);
 
-        if (toUser.isEmpty())
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)
             return ResponseEntity.badRequest()
-                    .body(String.format("User %s not exists", transfer.to()));
+                    .body("Idempotency-Key must be 1-" + MAX_IDEMPOTENCY_KEY_LENGTH + " characters long");
 
-        Optional<Balance> fromBalance = balanceService.findByUser(user);
-        Optional<Balance> toBalance = balanceService.findByUser(toUser.get());
+        // engine transfers must not wait for their ack holding the connection of a transaction
+        return idempotencyService.execute(user.getId(), idempotencyKey, transfer.to() + ":" + transfer.amount(),
+                balanceService.transfersInTransaction(), () -> transfer(user, transfer));
+    }
 
-        if (fromBalance.isEmpty()) return ResponseEntity.badRequest()
-                .body(String.format("Balance not found for user %s", user.getId()));
-        if (toBalance.isEmpty()) return ResponseEntity.badRequest()
-                .body(String.format("Balance not found for user %s", toUser.get().getId()));
+    private ResponseEntity<String> transfer(User user, TransferDto transfer) {
+        Optional<TransferParties> resolved = transferMetrics.record(TransferMetrics.Phase.LOOKUP, () -> balanceService.resolveTransfer(user, transfer.to()));
+
+        if (resolved.isEmpty()) return ResponseEntity.badRequest()
+                .body(String.format(message("money.balance-not-found"), user.getId()));
+
+        TransferParties parties = resolved.get();
+        if (parties.recipientUserId() == null)
+            return ResponseEntity.badRequest()
+                    .body(String.format(message("money.user-not-found"), transfer.to()));
+
+        if (parties.from() == null) return ResponseEntity.badRequest()
+                .body(String.format(message("money.balance-not-found"), user.getId()));
+        if (parties.to() == null) return ResponseEntity.badRequest()
+                .body(String.format(message("money.balance-not-found"), parties.recipientUserId()));
 
         try {
-            balanceService.withdraw(fromBalance.get(), toBalance.get(), BigDecimal.valueOf(transfer.amount()));
-            log.info("User {} was sent {}$ to the user {}", user.getUsername(), transfer.amount(), toUser.get().getUsername());
-            return ResponseEntity.ok().body("Money transferred successfully");
-        } catch (Exception e) {
-            log.error("Failed to transfer money from {} to {} with amount {}: {}", user.getUsername(), toUser.get().getUsername(), transfer.amount(), e.getMessage());
+            balanceService.withdraw(parties.from(), parties.to(), transfer.amount());
+            log.info("User {} was sent {}$ to the user {}", user.getUsername(), transfer.amount(), transfer.to());
+            return ResponseEntity.ok().body(message("money.transferred"));
+        } catch (InsufficientFundsException e) {
+            log.info("Failed to transfer money from {} to {} with amount {}: {}", user.getUsername(), transfer.to(), transfer.amount(), e.getMessage());
+            return ResponseEntity.badRequest().body(message("money.insufficient-funds"));
+        } catch (IllegalArgumentException e) {
+            log.info("Failed to transfer money from {} to {} with amount {}: {}", user.getUsername(), transfer.to(), transfer.amount(), e.getMessage());
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            // may succeed if repeated, so it's not the client's fault and not stored with its Idempotency-Key
+            log.error("Failed to transfer money from {} to {} with amount {}: {}", user.getUsername(), transfer.to(), transfer.amount(), e.getMessage());
+            return ResponseEntity.internalServerError().body(message("money.transfer-failed"));
+        }
+    }
+
+    private String message(String code) {
+        return localization.get(code, RESPONSE_LANGUAGE);
+    }
+
+    /**
+     * Queue transfer and return without waiting for it to be applied
+     * Poll {@code GET /money/transfers/{id}} for the outcome
+     *
+     * @param user     authenticated user
+     * @param transfer transfer data
+     * @return 202 with transfer id, 400 if transfer can't be queued or 503 if the queue is full
+     */
+    @PostMapping("/money/transfers")
+    public ResponseEntity<TransferStatusDto> submitTransfer(@AuthenticationPrincipal User user, @RequestBody TransferDto transfer) {
+        if (transfer.amount() == null || !transfer.amount().isPositive())
+            return ResponseEntity.badRequest()
+                    .body(new TransferStatusDto(null, TransferStatus.INVALID));
+
+        Optional<TransferParties> parties = balanceService.resolveTransfer(user, transfer.to());
+
+        if (parties.isEmpty() || parties.get().from() == null) return ResponseEntity.badRequest()
+                .body(new TransferStatusDto(null, TransferStatus.INVALID));
+        if (parties.get().to() == null) return ResponseEntity.badRequest()
+                .body(new TransferStatusDto(null, TransferStatus.UNKNOWN_USER));
+
+        Optional<UUID> id = transferQueue.submit(user.getId(),
+                new Transfer(parties.get().from().getId(), parties.get().to().getId(), transfer.amount()));
+
+        if (id.isEmpty()) {
+            log.warn("Transfer queue is full, rejected transfer of user {}", user.getUsername());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
         }
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/money/transfers/" + id.get()))
+                .body(new TransferStatusDto(id.get(), TransferStatus.PENDING));
+    }
+
+    /**
+     * Get outcome of a queued transfer
+     * The request thread is released while waiting
+     *
+     * @param user authenticated user
+     * @param id   transfer id
+     * @param wait seconds to wait for the outcome if transfer is still pending, capped by server settings
+     * @return transfer status, 404 if transfer is unknown, expired or submitted by another user
+     */
+    @GetMapping("/money/transfers/{id}")
+    public CompletableFuture<ResponseEntity<TransferStatusDto>> getTransfer(@AuthenticationPrincipal User user, @PathVariable UUID id,
+                                                                            @RequestParam(defaultValue = "0") int wait) {
+        Optional<CompletableFuture<TransferStatus>> result = transferQueue.result(user.getId(), id);
+        if (result.isEmpty()) return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+
+        long waitMillis = Math.min(TimeUnit.SECONDS.toMillis(Math.max(wait, 0)), transferProperties.getAsync().getMaxWait().toMillis());
+        CompletableFuture<TransferStatus> status = waitMillis == 0
+                ? CompletableFuture.completedFuture(result.get().getNow(TransferStatus.PENDING))
+                : result.get().copy().completeOnTimeout(TransferStatus.PENDING, waitMillis, TimeUnit.MILLISECONDS);
+
+        return status.thenApply(transferStatus -> ResponseEntity.ok().body(new TransferStatusDto(id, transferStatus)));
+    }
+
+    /**
+     * Send money to many users at once
+     *
+     * @param user      authenticated user
+     * @param transfers recipients and amounts
+     * @return status of every transfer, in request order
+     */
+    @PostMapping("/money/batch")
+    public ResponseEntity<BatchTransferResponse> addMoneyBatch(@AuthenticationPrincipal User user, @RequestBody List<TransferDto> transfers) {
+        if (transfers == null || transfers.isEmpty())
+            return ResponseEntity.badRequest()
+                    .body(new BatchTransferResponse("No transfers provided"));
+
+        int maxItems = transferProperties.getBatch().getMaxItems();
+        if (transfers.size() > maxItems)
+            return ResponseEntity.badRequest()
+                    .body(new BatchTransferResponse(String.format("Too many transfers, max is %d", maxItems)));
+
+        Optional<Balance> fromBalance = balanceService.findByUser(user);
+        if (fromBalance.isEmpty()) return ResponseEntity.badRequest()
+                .body(new BatchTransferResponse(String.format("Balance not found for user %s", user.getId())));
+
+        List<TransferStatus> statuses = batchTransferService.transfer(fromBalance.get(), transfers);
+
+        List<TransferResultDto> results = new ArrayList<>(statuses.size());
+        for (int i = 0; i < statuses.size(); i++)
+            results.add(new TransferResultDto(i, transfers.get(i).to(), statuses.get(i)));
+
+        log.info("User {} sent batch of {} transfers, {} succeeded", user.getUsername(), transfers.size(),
+                statuses.stream().filter(TransferStatus.OK::equals).count());
+
+        return ResponseEntity.ok().body(new BatchTransferResponse(results));
     }
 }
@@ -0,0 +1,82 @@
+package com.serezka.server.money.controller;
+
+import com.serezka.server.money.database.service.ExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Controller for full data exports, available to admins only
+ * Every endpoint streams newline delimited JSON, one object per row, gzip compressed on request
+ *
+ * @author serezk4
+ * @version 1.0
+ */
+
+@RestController
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class ExportController {
+    private static final String NDJSON = "application/x-ndjson";
+
+    ExportService exportService;
+
+    /**
+     * Export all users, without passwords
+     *
+     * @param gzip     compress response
+     * @param response response to stream rows to
+     */
+    @GetMapping("/admin/export/users")
+    public void exportUsers(@RequestParam(defaultValue = "false") boolean gzip, HttpServletResponse response) throws IOException {
+        export(ExportService.Dataset.USERS, gzip, response);
+    }
+
+    /**
+     * Export all balances, striped ones with the money of all their stripes
+     *
+     * @param gzip     compress response
+     * @param response response to stream rows to
+     */
+    @GetMapping("/admin/export/balances")
+    public void exportBalances(@RequestParam(defaultValue = "false") boolean gzip, HttpServletResponse response) throws IOException {
+        export(ExportService.Dataset.BALANCES, gzip, response);
+    }
+
+    /**
+     * Export all ledger entries, one per touched balance of every transfer
+     *
+     * @param gzip     compress response
+     * @param response response to stream rows to
+     */
+    @GetMapping("/admin/export/transfers")
+    public void exportTransfers(@RequestParam(defaultValue = "false") boolean gzip, HttpServletResponse response) throws IOException {
+        export(ExportService.Dataset.TRANSFERS, gzip, response);
+    }
+
+    private void export(ExportService.Dataset dataset, boolean gzip, HttpServletResponse response) throws IOException {
+        String name = dataset.name().toLowerCase();
+
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".ndjson\"");
+        if (gzip) response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        try {
+            exportService.export(dataset, response.getOutputStream(), gzip);
+        } catch (UncheckedIOException e) {
+            // headers are sent already, the client sees a truncated stream
+            log.error("Export of {} was interrupted: {}", name, e.getMessage());
+        }
+    }
+}
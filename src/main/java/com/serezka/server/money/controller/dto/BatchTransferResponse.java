@@ -0,0 +1,13 @@
+package com.serezka.server.money.controller.dto;
+
+import java.util.List;
+
+public record BatchTransferResponse(boolean error, String message, List<TransferResultDto> results) {
+    public BatchTransferResponse(List<TransferResultDto> results) {
+        this(false, null, results);
+    }
+
+    public BatchTransferResponse(String message) {
+        this(true, message, List.of());
+    }
+}
@@ -0,0 +1,13 @@
+package com.serezka.server.money.controller.dto;
+
+import com.serezka.server.money.database.repository.HistoryEntry;
+
+import java.util.List;
+
+/**
+ * Page of balance history
+ *
+ * @param entries entries, newest first
+ * @param next    value of {@code before} for the next page, null if this page is the last
+ */
+public record HistoryResponse(List<HistoryEntry> entries, Long next) { }
@@ -1,3 +1,9 @@
 package com.serezka.server.money.controller.dto;
 
-public record TransferDto (String to, double amount) { }
+import com.serezka.server.money.database.model.Money;
+
+/**
+ * @param to     username of recipient
+ * @param amount exact amount, a decimal string like {@code "12.30"}
+ */
+public record TransferDto (String to, Money amount) { }
@@ -0,0 +1,5 @@
+package com.serezka.server.money.controller.dto;
+
+import com.serezka.server.money.database.model.TransferStatus;
+
+public record TransferResultDto(int index, String to, TransferStatus status) { }
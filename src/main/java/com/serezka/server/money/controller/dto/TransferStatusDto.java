@@ -0,0 +1,10 @@
+package com.serezka.server.money.controller.dto;
+
+import com.serezka.server.money.database.model.TransferStatus;
+
+import java.util.UUID;
+
+/**
+ * Outcome of a submitted transfer, {@link TransferStatus#PENDING} until it is applied
+ */
+public record TransferStatusDto(UUID id, TransferStatus status) { }
@@ -3,9 +3,10 @@ package com.serezka.server.money.database.model;
 import com.serezka.server.authorization.database.model.User;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Formula;
 import org.hibernate.proxy.HibernateProxy;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
 @Entity
@@ -15,8 +16,12 @@ import java.util.Objects;
 @ToString
 @Builder
 public class Balance {
+    /**
+     * Taken from {@code balances_seq} in blocks of 50, so inserts of many balances can be batched
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "balances_seq")
+    @SequenceGenerator(name = "balances_seq", sequenceName = "balances_seq", allocationSize = 50)
     Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
@@ -26,11 +31,41 @@ public class Balance {
 
     @Column(nullable = false)
     @Builder.Default
-    BigDecimal balance = BigDecimal.valueOf(1000.0);
+    Money balance = Money.ofMinor(1000_00);
+
+    /**
+     * Number of slots the balance is split into, this row being slot 0
+     * 0 or 1 means the balance is not striped
+     */
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    int stripes = 0;
+
+    /**
+     * Money held by stripe rows of this balance, in minor units
+     */
+    @Formula("(SELECT COALESCE(SUM(s.amount), 0) FROM balance_stripes s WHERE s.balance_id = id)")
+    @Setter(AccessLevel.NONE)
+    Long striped;
 
     @Version
     private Long version;
 
+    /**
+     * @return whether the balance is split into several rows
+     */
+    public boolean isStriped() {
+        return stripes > 1;
+    }
+
+    /**
+     * @return money held by this row and all its stripes
+     */
+    public Money getTotal() {
+        return striped == null || striped == 0 ? balance : Money.ofMinor(balance.minor() + striped);
+    }
+
     @Override
     public final boolean equals(Object o) {
         if (this == o) return true;
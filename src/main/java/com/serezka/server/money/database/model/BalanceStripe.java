@@ -0,0 +1,50 @@
+package com.serezka.server.money.database.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.util.Objects;
+
+/**
+ * Part of a striped balance
+ * Slot 0 of a striped balance is the {@link Balance} row itself, this entity holds slots 1..N-1,
+ * so credits to a hot balance spread over N rows instead of queueing on one row lock
+ */
+@Entity
+@Table(name = "balance_stripes", uniqueConstraints = @UniqueConstraint(name = "balance_stripes_balance_id_stripe_key", columnNames = {"balance_id", "stripe"}))
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@ToString
+@Builder
+public class BalanceStripe {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "balance_id", nullable = false)
+    Long balanceId;
+
+    @Column(nullable = false)
+    int stripe;
+
+    @Column(nullable = false)
+    @Builder.Default
+    Money amount = Money.ZERO;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        BalanceStripe stripe = (BalanceStripe) o;
+        return getId() != null && Objects.equals(getId(), stripe.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -0,0 +1,45 @@
+package com.serezka.server.money.database.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.util.Objects;
+
+/**
+ * Position of the write-ahead log up to which transfers are applied to the database
+ * Written in the same transaction as the balances it covers
+ */
+@Entity
+@Table(name = "engine_checkpoints")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@ToString
+@Builder
+public class EngineCheckpoint {
+    @Id
+    @Column(length = 64)
+    String id;
+
+    /**
+     * Log position right after the last applied record
+     */
+    @Column(nullable = false)
+    long lsn;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        EngineCheckpoint checkpoint = (EngineCheckpoint) o;
+        return getId() != null && Objects.equals(getId(), checkpoint.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -0,0 +1,79 @@
+package com.serezka.server.money.database.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Stored response of request sent with Idempotency-Key header
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idempotency_keys_created_idx", columnList = "created"))
+@Getter
+@NoArgsConstructor @AllArgsConstructor
+@ToString
+@Builder
+public class IdempotencyRecord implements Persistable<String> {
+    /**
+     * Status of a key whose request is still running or whose outcome is unknown
+     */
+    public static final int PENDING = 0;
+
+    /**
+     * Owner id and client key joined with a colon
+     */
+    @Id
+    @Column(length = 320)
+    String id;
+
+    /**
+     * Hex SHA-256 of the request the key was first used with
+     */
+    @Column(nullable = false, length = 64)
+    String fingerprint;
+
+    @Column(nullable = false)
+    int status;
+
+    @Column(length = 2048)
+    String body;
+
+    @Column(nullable = false)
+    Instant created;
+
+    @Transient
+    @Builder.Default
+    @ToString.Exclude
+    boolean fresh = true;
+
+    @Override
+    public boolean isNew() {
+        return fresh;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.fresh = false;
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        IdempotencyRecord record = (IdempotencyRecord) o;
+        return getId() != null && Objects.equals(getId(), record.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -0,0 +1,61 @@
+package com.serezka.server.money.database.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Append-only posting of a balance change
+ * Every transfer writes one entry per touched balance, entries are never updated or deleted
+ */
+@Entity
+@Immutable
+@Table(name = "ledger_entries", indexes = @Index(name = "ledger_entries_account_id_idx", columnList = "account_id, id"))
+@Getter
+@NoArgsConstructor @AllArgsConstructor
+@ToString
+@Builder
+public class LedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "transfer_id", nullable = false)
+    UUID transferId;
+
+    @Column(name = "account_id", nullable = false)
+    Long accountId;
+
+    @Column(name = "counterparty_id")
+    Long counterpartyId;
+
+    /**
+     * Signed amount, negative for withdrawals
+     */
+    @Column(nullable = false)
+    Money amount;
+
+    @Column(nullable = false)
+    Instant created;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        LedgerEntry entry = (LedgerEntry) o;
+        return getId() != null && Objects.equals(getId(), entry.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -0,0 +1,147 @@
+package com.serezka.server.money.database.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Exact amount of money as a count of minor units (cents)
+ * Stored as {@code BIGINT} through {@link MoneyConverter}, written to JSON as a decimal string like {@code "12.30"}
+ *
+ * @param minor amount in minor units, negative for debts and withdrawals
+ */
+@JsonDeserialize(using = Money.Deserializer.class)
+public record Money(long minor) implements Comparable<Money> {
+    /**
+     * Number of fraction digits
+     */
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_MAJOR = 100;
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    /**
+     * @param value amount with at most {@value SCALE} fraction digits
+     * @throws ArithmeticException if value has more fraction digits or doesn't fit
+     */
+    public static Money of(BigDecimal value) {
+        return ofMinor(value.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Parse decimal string without rounding
+     *
+     * @param value amount like {@code 12}, {@code -0.5} or {@code 12.30}
+     * @throws IllegalArgumentException if value is not a decimal with at most {@value SCALE} fraction digits
+     */
+    public static Money parse(String value) {
+        if (value == null || value.isEmpty()) throw new IllegalArgumentException("Amount is empty");
+
+        int position = 0;
+        boolean negative = value.charAt(0) == '-';
+        if (negative || value.charAt(0) == '+') position++;
+
+        long major = 0;
+        int digits = 0;
+        while (position < value.length() && Character.isDigit(value.charAt(position))) {
+            major = Math.addExact(Math.multiplyExact(major, 10), value.charAt(position++) - '0');
+            digits++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (position < value.length() && value.charAt(position) == '.') {
+            position++;
+            while (position < value.length() && Character.isDigit(value.charAt(position))) {
+                if (++fractionDigits > SCALE) throw new IllegalArgumentException("Amount has more than " + SCALE + " fraction digits: " + value);
+                fraction = fraction * 10 + value.charAt(position++) - '0';
+            }
+        }
+
+        if (position != value.length() || digits + fractionDigits == 0)
+            throw new IllegalArgumentException("Amount is not a decimal number: " + value);
+
+        for (int i = fractionDigits; i < SCALE; i++) fraction *= 10;
+        long minor = Math.addExact(Math.multiplyExact(major, MINOR_PER_MAJOR), fraction);
+        return ofMinor(negative ? -minor : minor);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    public Money negate() {
+        return ofMinor(-minor);
+    }
+
+    public boolean isPositive() {
+        return minor > 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minor < other.minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    /**
+     * @return amount with exactly {@value SCALE} fraction digits, like {@code 12.30}
+     */
+    @JsonValue
+    @Override
+    public String toString() {
+        return format(minor);
+    }
+
+    /**
+     * Format amount in minor units without creating a {@code Money}
+     */
+    public static String format(long minor) {
+        long major = Math.abs(minor / MINOR_PER_MAJOR);
+        long fraction = Math.abs(minor % MINOR_PER_MAJOR);
+        return (minor < 0 ? "-" : "") + major + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    /**
+     * Reads JSON strings and numbers from their original text, so {@code 0.1} never passes through a double
+     */
+    static class Deserializer extends StdScalarDeserializer<Money> {
+        Deserializer() {
+            super(Money.class);
+        }
+
+        @Override
+        public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (!parser.hasToken(JsonToken.VALUE_STRING) && !parser.currentToken().isNumeric())
+                return (Money) context.handleUnexpectedToken(Money.class, parser);
+
+            String text = parser.getText().trim();
+            try {
+                return parse(text);
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                throw context.weirdStringException(text, Money.class, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.serezka.server.money.database.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores {@link Money} as a {@code BIGINT} count of minor units
+ */
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, Long> {
+    @Override
+    public Long convertToDatabaseColumn(Money money) {
+        return money == null ? null : money.minor();
+    }
+
+    @Override
+    public Money convertToEntityAttribute(Long minor) {
+        return minor == null ? null : Money.ofMinor(minor);
+    }
+}
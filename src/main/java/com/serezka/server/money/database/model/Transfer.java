@@ -0,0 +1,17 @@
+package com.serezka.server.money.database.model;
+
+import java.util.UUID;
+
+/**
+ * Transfer between two balances resolved to their ids
+ *
+ * @param id     transfer id, shared by its ledger entries
+ * @param fromId id of balance to withdraw
+ * @param toId   id of balance to add
+ * @param amount amount of money
+ */
+public record Transfer(UUID id, Long fromId, Long toId, Money amount) {
+    public Transfer(Long fromId, Long toId, Money amount) {
+        this(UUID.randomUUID(), fromId, toId, amount);
+    }
+}
@@ -0,0 +1,20 @@
+package com.serezka.server.money.database.model;
+
+/**
+ * Outcome of a single transfer
+ */
+public enum TransferStatus {
+    OK,
+    INSUFFICIENT_FUNDS,
+    UNKNOWN_USER,
+    INVALID,
+    /**
+     * Queued and not applied yet
+     */
+    PENDING,
+    /**
+     * Could not be applied because of an error
+     * Nothing was moved, unless the in-memory engine failed to confirm a transfer it had already taken
+     */
+    FAILED
+}
@@ -0,0 +1,10 @@
+package com.serezka.server.money.database.repository;
+
+/**
+ * Projection of balance id by owner username
+ */
+public interface AccountRef {
+    String getUsername();
+
+    Long getId();
+}
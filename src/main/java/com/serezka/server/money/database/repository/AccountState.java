@@ -0,0 +1,27 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.Balance;
+import lombok.Value;
+
+/**
+ * Balance state a transfer starts from, without the entity and its lazy user
+ * Amount and version are as they were read, transfers check them again by row lock or by version
+ */
+@Value
+public class AccountState implements VersionedAmount {
+    Long id;
+    long amount;
+    Long version;
+    int stripes;
+
+    public static AccountState of(Balance balance) {
+        return new AccountState(balance.getId(), balance.getBalance().minor(), balance.getVersion(), balance.getStripes());
+    }
+
+    /**
+     * @return whether the balance is split into several rows
+     */
+    public boolean isStriped() {
+        return stripes > 1;
+    }
+}
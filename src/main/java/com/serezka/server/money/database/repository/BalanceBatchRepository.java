@@ -0,0 +1,24 @@
+package com.serezka.server.money.database.repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Set-based balance operations executed with plain JDBC
+ */
+public interface BalanceBatchRepository {
+    /**
+     * Lock balances with {@code SELECT ... FOR UPDATE} in id order
+     *
+     * @param ids balance ids
+     * @return current amounts in minor units by balance id, missing balances are absent
+     */
+    Map<Long, Long> lockBalances(Collection<Long> ids);
+
+    /**
+     * Add deltas to balances in a single JDBC batch
+     *
+     * @param deltas amount in minor units to add (negative to subtract) by balance id
+     */
+    void applyDeltas(Map<Long, Long> deltas);
+}
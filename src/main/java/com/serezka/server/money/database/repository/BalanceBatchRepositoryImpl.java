@@ -0,0 +1,47 @@
+package com.serezka.server.money.database.repository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class BalanceBatchRepositoryImpl implements BalanceBatchRepository {
+    JdbcTemplate jdbcTemplate;
+    NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Override
+    public Map<Long, Long> lockBalances(Collection<Long> ids) {
+        Map<Long, Long> balances = new HashMap<>();
+        if (ids.isEmpty()) return balances;
+
+        namedParameterJdbcTemplate.query(
+                "SELECT id, balance FROM balances WHERE id IN (:ids) ORDER BY id FOR UPDATE",
+                Map.of("ids", ids),
+                rs -> {
+                    balances.put(rs.getLong(1), rs.getLong(2));
+                });
+
+        return balances;
+    }
+
+    @Override
+    public void applyDeltas(Map<Long, Long> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        new TreeMap<>(deltas).forEach((id, delta) -> {
+            if (delta != 0) args.add(new Object[]{delta, id});
+        });
+        if (args.isEmpty()) return;
+
+        jdbcTemplate.batchUpdate("UPDATE balances SET balance = balance + ?, version = version + 1 WHERE id = ?", args);
+    }
+}
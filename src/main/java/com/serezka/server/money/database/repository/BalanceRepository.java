@@ -2,18 +2,42 @@ package com.serezka.server.money.database.repository;
 
 import com.serezka.server.authorization.database.model.User;
 import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface BalanceRepository extends JpaRepository<Balance, Long> {
+public interface BalanceRepository extends JpaRepository<Balance, Long>, BalanceBatchRepository {
     Optional<Balance> findByUser(User user);
     boolean existsByUser(User user);
 
+    @Query("SELECT u.username AS username, b.id AS id FROM Balance b JOIN b.user u WHERE u.username IN :usernames")
+    List<AccountRef> findAccountsByUsernameIn(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Resolve balances of sender and recipient of a transfer in one statement, without loading entities
+     *
+     * @param senderId  id of the sending user
+     * @param recipient username of the recipient
+     * @return both sides, empty if sender not found
+     */
+    @Query("SELECT new com.serezka.server.money.database.repository.TransferParties(" +
+            "fb.id, fb.balance, fb.version, fb.stripes, r.id, tb.id, tb.balance, tb.version, tb.stripes) " +
+            "FROM User s LEFT JOIN Balance fb ON fb.user = s " +
+            "LEFT JOIN User r ON r.username = :recipient LEFT JOIN Balance tb ON tb.user = r " +
+            "WHERE s.id = :senderId")
+    Optional<TransferParties> resolveTransfer(@Param("senderId") Long senderId, @Param("recipient") String recipient);
+
+    @Query("SELECT b.id FROM Balance b WHERE b.stripes > 1")
+    List<Long> findStripedIds();
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT b FROM Balance b WHERE b.user = :user")
     Optional<Balance> lockBalanceByUser(@Param("user") User user);
@@ -22,5 +46,55 @@ public interface BalanceRepository extends JpaRepository<Balance, Long> {
     @Query("SELECT b FROM Balance b WHERE b.id = :id")
     Optional<Balance> lockBalanceById(Long id);
 
+    /**
+     * Subtract amount from balance if it holds enough money
+     *
+     * @return number of updated rows, 0 if balance not found or not enough money
+     */
+    @Modifying
+    @Query("UPDATE Balance b SET b.balance = b.balance - :amount, b.version = b.version + 1 " +
+            "WHERE b.id = :id AND b.balance >= :amount")
+    int debit(@Param("id") Long id, @Param("amount") Money amount);
+
+    /**
+     * Add amount to balance
+     *
+     * @return number of updated rows, 0 if balance not found
+     */
+    @Modifying
+    @Query("UPDATE Balance b SET b.balance = b.balance + :amount, b.version = b.version + 1 WHERE b.id = :id")
+    int credit(@Param("id") Long id, @Param("amount") Money amount);
+
+    /**
+     * Money held by balance row and all its stripes, in minor units
+     */
+    @Query(value = "SELECT b.balance + COALESCE((SELECT SUM(s.amount) FROM balance_stripes s WHERE s.balance_id = b.id), 0) " +
+            "FROM balances b WHERE b.id = :id", nativeQuery = true)
+    Optional<Long> findTotalById(@Param("id") Long id);
+
+    @Query(value = "SELECT id, balance AS amount, version, stripes FROM balances WHERE id = :id", nativeQuery = true)
+    Optional<VersionedAmount> findVersionedById(@Param("id") Long id);
+
+    @Query(value = "SELECT id, balance AS amount, version, stripes FROM balances WHERE id IN (:ids)", nativeQuery = true)
+    List<VersionedAmount> findVersionedByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "SELECT id, balance AS amount, version, stripes FROM balances WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<VersionedAmount> lockVersionedById(@Param("id") Long id);
+
+    /**
+     * Set amount if balance version is unchanged since it was read
+     *
+     * @return number of updated rows, 0 if balance was changed concurrently or not found
+     */
+    @Modifying
+    @Query("UPDATE Balance b SET b.balance = :amount, b.version = b.version + 1 WHERE b.id = :id AND b.version = :version")
+    int compareAndSet(@Param("id") Long id, @Param("version") Long version, @Param("amount") Money amount);
+
+    @Modifying
+    @Query("UPDATE Balance b SET b.balance = :amount, b.version = b.version + 1 WHERE b.id = :id")
+    int setAmount(@Param("id") Long id, @Param("amount") Money amount);
 
+    @Modifying
+    @Query("UPDATE Balance b SET b.stripes = :stripes, b.version = b.version + 1 WHERE b.id = :id")
+    int setStripes(@Param("id") Long id, @Param("stripes") int stripes);
 }
@@ -0,0 +1,56 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.BalanceStripe;
+import com.serezka.server.money.database.model.Money;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface BalanceStripeRepository extends JpaRepository<BalanceStripe, Long> {
+    /**
+     * Lock all stripes of balance in stripe order
+     * Reads current amounts from the database, never from the persistence context
+     */
+    @Query(value = "SELECT stripe AS stripe, amount AS amount FROM balance_stripes " +
+            "WHERE balance_id = :balanceId ORDER BY stripe FOR UPDATE", nativeQuery = true)
+    List<StripeAmount> lockStripes(@Param("balanceId") Long balanceId);
+
+    /**
+     * Lock one stripe of balance
+     *
+     * @return amount held by stripe, empty if balance has no such stripe
+     */
+    @Query(value = "SELECT amount FROM balance_stripes WHERE balance_id = :balanceId AND stripe = :stripe FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockStripe(@Param("balanceId") Long balanceId, @Param("stripe") int stripe);
+
+    /**
+     * Subtract amount from stripe if it holds enough money
+     *
+     * @return number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE BalanceStripe s SET s.amount = s.amount - :amount " +
+            "WHERE s.balanceId = :balanceId AND s.stripe = :stripe AND s.amount >= :amount")
+    int debit(@Param("balanceId") Long balanceId, @Param("stripe") int stripe, @Param("amount") Money amount);
+
+    /**
+     * Add amount to stripe
+     *
+     * @return number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE BalanceStripe s SET s.amount = s.amount + :amount WHERE s.balanceId = :balanceId AND s.stripe = :stripe")
+    int credit(@Param("balanceId") Long balanceId, @Param("stripe") int stripe, @Param("amount") Money amount);
+
+    @Modifying
+    @Query("UPDATE BalanceStripe s SET s.amount = :amount WHERE s.balanceId = :balanceId AND s.stripe = :stripe")
+    int setAmount(@Param("balanceId") Long balanceId, @Param("stripe") int stripe, @Param("amount") Money amount);
+
+    @Modifying
+    @Query("DELETE FROM BalanceStripe s WHERE s.balanceId = :balanceId")
+    void deleteByBalanceId(@Param("balanceId") Long balanceId);
+}
@@ -0,0 +1,7 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.EngineCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface EngineCheckpointRepository extends JpaRepository<EngineCheckpoint, String> {
+}
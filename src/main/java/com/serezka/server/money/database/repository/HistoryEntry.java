@@ -0,0 +1,21 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.Money;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Projection of ledger entry shown to balance owner
+ */
+public interface HistoryEntry {
+    Long getId();
+
+    UUID getTransferId();
+
+    Money getAmount();
+
+    String getCounterparty();
+
+    Instant getCreated();
+}
@@ -0,0 +1,19 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface IdempotencyRepository extends JpaRepository<IdempotencyRecord, String> {
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.created < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = :status, r.body = :body WHERE r.id = :id")
+    int complete(@Param("id") String id, @Param("status") int status, @Param("body") String body);
+}
@@ -0,0 +1,17 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.LedgerEntry;
+
+import java.util.List;
+
+/**
+ * Ledger writes executed with plain JDBC
+ */
+public interface LedgerBatchRepository {
+    /**
+     * Insert entries with a single JDBC batch
+     *
+     * @param entries entries to append, ids are generated by the database
+     */
+    void appendAll(List<LedgerEntry> entries);
+}
@@ -0,0 +1,34 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.LedgerEntry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class LedgerBatchRepositoryImpl implements LedgerBatchRepository {
+    JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void appendAll(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) return;
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO ledger_entries (transfer_id, account_id, counterparty_id, amount, created) VALUES (?, ?, ?, ?, ?)",
+                entries, entries.size(),
+                (ps, entry) -> {
+                    ps.setObject(1, entry.getTransferId());
+                    ps.setLong(2, entry.getAccountId());
+                    if (entry.getCounterpartyId() == null) ps.setNull(3, Types.BIGINT);
+                    else ps.setLong(3, entry.getCounterpartyId());
+                    ps.setLong(4, entry.getAmount().minor());
+                    ps.setTimestamp(5, Timestamp.from(entry.getCreated()));
+                });
+    }
+}
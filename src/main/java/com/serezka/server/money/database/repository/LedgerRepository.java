@@ -0,0 +1,24 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.LedgerEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface LedgerRepository extends JpaRepository<LedgerEntry, Long>, LedgerBatchRepository {
+    /**
+     * Seek page of balance history, newest first
+     * Served by the (account_id, id) index no matter how deep the page is
+     *
+     * @param accountId balance id
+     * @param before    return entries with id lower than this
+     * @param limit     page size
+     */
+    @Query("SELECT e.id AS id, e.transferId AS transferId, e.amount AS amount, u.username AS counterparty, e.created AS created " +
+            "FROM LedgerEntry e LEFT JOIN Balance b ON b.id = e.counterpartyId LEFT JOIN b.user u " +
+            "WHERE e.accountId = :accountId AND e.id < :before ORDER BY e.id DESC")
+    List<HistoryEntry> findHistory(@Param("accountId") Long accountId, @Param("before") Long before, Limit limit);
+}
@@ -0,0 +1,10 @@
+package com.serezka.server.money.database.repository;
+
+/**
+ * Projection of stripe slot and its amount in minor units
+ */
+public interface StripeAmount {
+    int getStripe();
+
+    long getAmount();
+}
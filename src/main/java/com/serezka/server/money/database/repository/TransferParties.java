@@ -0,0 +1,22 @@
+package com.serezka.server.money.database.repository;
+
+import com.serezka.server.money.database.model.Money;
+
+/**
+ * Both sides of a transfer, resolved by sender id and recipient username with one query
+ *
+ * @param recipientUserId id of the recipient, null if no user has the username
+ * @param from            sender balance, null if the sender has none
+ * @param to              recipient balance, null if the recipient or their balance not found
+ */
+public record TransferParties(Long recipientUserId, AccountState from, AccountState to) {
+    // constructor expression of BalanceRepository.resolveTransfer, outer joins give nulls for missing rows
+    public TransferParties(Long fromId, Money fromAmount, Long fromVersion, Integer fromStripes,
+                           Long recipientUserId, Long toId, Money toAmount, Long toVersion, Integer toStripes) {
+        this(recipientUserId, account(fromId, fromAmount, fromVersion, fromStripes), account(toId, toAmount, toVersion, toStripes));
+    }
+
+    private static AccountState account(Long id, Money amount, Long version, Integer stripes) {
+        return id == null ? null : new AccountState(id, amount.minor(), version, stripes);
+    }
+}
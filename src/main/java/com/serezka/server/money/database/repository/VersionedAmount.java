@@ -0,0 +1,14 @@
+package com.serezka.server.money.database.repository;
+
+/**
+ * Projection of balance amount in minor units and the version it was read at
+ */
+public interface VersionedAmount {
+    Long getId();
+
+    long getAmount();
+
+    Long getVersion();
+
+    int getStripes();
+}
@@ -0,0 +1,147 @@
+package com.serezka.server.money.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.VersionedAmount;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Balances served to {@code GET /money}, keyed by balance id and holding the version they were read at
+ * <p>
+ * Transfers put the balances they changed after their transaction commits, never before, and an entry is only
+ * replaced by one of the same or a newer version. So a load racing with a transfer can't bring the old amount back,
+ * and a read started after a transfer returned sees it, also when the entry was dropped meanwhile and the load is
+ * served by a replica: the last version committed on this node is kept as a floor, older loads are repeated on the
+ * primary. Transfers committed on other nodes are seen once the entry expires.
+ * Striped balances are not served from the cache, credits to their stripes don't change the version.
+ * Bounded by size and ttl, hit and miss counts are exported as {@code cache.*{cache=balances}} metrics
+ */
+@Component
+public class BalanceCache {
+    private final BalanceRepository balanceRepository;
+    private final Cache<Long, Cached> balances;
+    // balance id by user id, never changes
+    private final Cache<Long, Long> owners;
+    // last version committed on this node by balance id, kept as long as the balances
+    private final Cache<Long, Long> committed;
+
+    private record Cached(long amount, long version, boolean striped) {
+        Cached(long amount, Long version, boolean striped) {
+            this(amount, version(version), striped);
+        }
+
+        static long version(Long version) {
+            // rows created before versioning have none, any real version replaces them
+            return version == null ? -1 : version;
+        }
+    }
+
+    public BalanceCache(BalanceRepository balanceRepository, BalanceCacheProperties properties, MeterRegistry meterRegistry) {
+        this.balanceRepository = balanceRepository;
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(properties.getSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        this.owners = Caffeine.newBuilder()
+                .maximumSize(properties.getSize())
+                .build();
+        this.committed = Caffeine.newBuilder()
+                .maximumSize(properties.getSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "balances");
+    }
+
+    /**
+     * Get cached money of user balance or load it
+     *
+     * @param userId        balance owner id
+     * @param loader        function to load balance from the database, may read from a replica
+     * @param primaryLoader function to load balance from the primary, used if loader returned a version
+     *                      older than one committed on this node
+     * @return money held by balance or empty if balance not exists
+     */
+    public Optional<Money> get(Long userId, Supplier<Optional<Balance>> loader, Supplier<Optional<Balance>> primaryLoader) {
+        Long id = owners.getIfPresent(userId);
+        Cached cached = id == null ? null : balances.getIfPresent(id);
+        if (cached != null && !cached.striped()) return Optional.of(Money.ofMinor(cached.amount()));
+
+        Optional<Balance> balance = loader.get();
+        if (balance.isPresent() && isBehind(balance.get())) balance = primaryLoader.get();
+        balance.ifPresent(loaded -> {
+            owners.put(userId, loaded.getId());
+            put(loaded.getId(), new Cached(loaded.getBalance().minor(), loaded.getVersion(), loaded.isStriped()));
+        });
+        return balance.map(Balance::getTotal);
+    }
+
+    /**
+     * Read balances changed by the current transaction and put them once it commits
+     * Must be called after the last change, the rows are still locked by it then
+     *
+     * @param ids ids of changed balances
+     */
+    public void refreshAfterCommit(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+
+        List<VersionedAmount> changed = balanceRepository.findVersionedByIdIn(ids);
+        afterCommit(() -> changed.forEach(balance ->
+                commit(balance.getId(), new Cached(balance.getAmount(), balance.getVersion(), balance.getStripes() > 1))));
+    }
+
+    /**
+     * Put balance once the current transaction commits, when its new state is already known
+     *
+     * @param id      balance id, not striped
+     * @param amount  new amount in minor units
+     * @param version new version
+     */
+    public void refreshAfterCommit(Long id, long amount, long version) {
+        Cached changed = new Cached(amount, version, false);
+        afterCommit(() -> commit(id, changed));
+    }
+
+    private boolean isBehind(Balance loaded) {
+        Long floor = committed.getIfPresent(loaded.getId());
+        return floor != null && Cached.version(loaded.getVersion()) < floor;
+    }
+
+    private void commit(Long id, Cached balance) {
+        // credits to stripes don't change the version, so loads of a striped balance can't be checked
+        committed.asMap().merge(id, balance.striped() ? Long.MAX_VALUE : balance.version(), Math::max);
+        put(id, balance);
+    }
+
+    private void put(Long id, Cached balance) {
+        balances.asMap().merge(id, balance, (cached, loaded) -> loaded.version() >= cached.version() ? loaded : cached);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,25 +1,72 @@
 package com.serezka.server.money.database.service;
 
 import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
 import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.repository.AccountState;
 import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.TransferParties;
+import com.serezka.server.money.database.repository.VersionedAmount;
+import com.serezka.server.money.engine.TransferEngine;
+import com.serezka.server.money.metrics.TransferMetrics;
+import com.serezka.server.money.metrics.TransferMetrics.Phase;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.LockModeType;
-import jakarta.transaction.Transactional;
 import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
-@RequiredArgsConstructor
 public class BalanceService {
     BalanceRepository balanceRepository;
     EntityManager entityManager;
+    TransferProperties transferProperties;
+    LedgerService ledgerService;
+    StripedBalanceService stripedBalanceService;
+    OptimisticTransferService optimisticTransferService;
+    EngineProperties engineProperties;
+    ObjectProvider<TransferEngine> transferEngine;
+    TransactionTemplate transactionTemplate;
+    TransactionTemplate readOnlyTransactionTemplate;
+    TransferMetrics transferMetrics;
+    BalanceCache balanceCache;
+
+    public BalanceService(BalanceRepository balanceRepository, EntityManager entityManager,
+                          TransferProperties transferProperties, LedgerService ledgerService,
+                          StripedBalanceService stripedBalanceService, OptimisticTransferService optimisticTransferService,
+                          EngineProperties engineProperties, ObjectProvider<TransferEngine> transferEngine,
+                          TransactionTemplate transactionTemplate, TransferMetrics transferMetrics, BalanceCache balanceCache) {
+        this.balanceRepository = balanceRepository;
+        this.entityManager = entityManager;
+        this.transferProperties = transferProperties;
+        this.ledgerService = ledgerService;
+        this.stripedBalanceService = stripedBalanceService;
+        this.optimisticTransferService = optimisticTransferService;
+        this.engineProperties = engineProperties;
+        this.transferEngine = transferEngine;
+        this.transactionTemplate = transactionTemplate;
+        this.transferMetrics = transferMetrics;
+        this.balanceCache = balanceCache;
+
+        // opened only when a cache miss is loaded, so hits don't take a connection
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
 
     /**
      * Save balance
@@ -46,6 +93,20 @@ public class BalanceService {
                 .build());
     }
 
+    /**
+     * Create balances of users that were just inserted, sent in JDBC batches
+     * Unlike {@link #create(User)} it doesn't check for existing balances, new users can't have any
+     *
+     * @param users new users
+     * @return created balances
+     */
+    @Transactional
+    public List<Balance> createAll(Collection<User> users) {
+        return balanceRepository.saveAll(users.stream()
+                .map(user -> Balance.builder().user(user).build())
+                .toList());
+    }
+
     /**
      * Withdraw money from one balance and add to another
      * Use this method if you want to transfer money between two balances
@@ -53,33 +114,97 @@ public class BalanceService {
      * @param from   balance to withdraw
      * @param to     balance to add
      * @param amount amount of money to withdraw
-     * @throws IllegalArgumentException if from or to is null, from equals to, amount is null or not enough money
+     * @throws IllegalArgumentException   if from or to is null, from equals to or amount is null
+     * @throws InsufficientFundsException if not enough money
      */
-    @Transactional
-    public void withdraw(Balance from, Balance to, BigDecimal amount) {
+    public void withdraw(Balance from, Balance to, Money amount) {
+        // check if balances are null
+        if (from == null || to == null) throw new IllegalArgumentException("Balances cannot be null");
+
+        // loaded entities may be long stale, their state is only used to find the rows
+        transfer(AccountState.of(from), AccountState.of(to), amount, false);
+    }
+
+    /**
+     * Withdraw money from one balance and add to another, starting from state just resolved by
+     * {@link #resolveTransfer(User, String)}
+     * Optimistic transfers write over the resolved versions without reading the balances again
+     *
+     * @param from   balance to withdraw
+     * @param to     balance to add
+     * @param amount amount of money to withdraw
+     * @throws IllegalArgumentException   if from or to is null, from equals to or amount is null
+     * @throws InsufficientFundsException if not enough money
+     */
+    public void withdraw(AccountState from, AccountState to, Money amount) {
+        transfer(from, to, amount, true);
+    }
+
+    /**
+     * Resolve sender and recipient balances of a transfer with one query
+     * Not transactional, the single statement runs on the primary
+     *
+     * @param sender    sending user
+     * @param recipient username of the recipient
+     * @return both sides, empty if sender not found
+     */
+    public Optional<TransferParties> resolveTransfer(User sender, String recipient) {
+        return balanceRepository.resolveTransfer(sender.getId(), recipient);
+    }
+
+    /**
+     * @return true if transfers join the surrounding transaction, false if the in-memory engine makes them durable by itself
+     */
+    public boolean transfersInTransaction() {
+        return transferProperties.getMode() != TransferProperties.Mode.MEMORY;
+    }
+
+    /**
+     * @param resolved state was just read, so the first optimistic attempt may trust it
+     */
+    private void transfer(AccountState from, AccountState to, Money amount, boolean resolved) {
         // check if balances are null
         if (from == null || to == null) throw new IllegalArgumentException("Balances cannot be null");
         // check if balances different
-        if (from.equals(to)) throw new IllegalArgumentException("Balances cannot be the same");
+        if (from.getId() != null && from.getId().equals(to.getId())) throw new IllegalArgumentException("Balances cannot be the same");
         // check if amount is null
         if (amount == null) throw new IllegalArgumentException("Amount cannot be null");
         // check if amount > 0
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) throw new IllegalArgumentException("Amount can't be <= 0");
-        // Checking if there is enough money
-        if (from.getBalance().compareTo(amount) < 0)
-            throw new IllegalArgumentException("Not enough money for operation");
+        if (!amount.isPositive()) throw new IllegalArgumentException("Amount can't be <= 0");
 
-        // lock balances
-        lockBalance(from);
-        lockBalance(to);
+        try {
+            // engine writes balances and history to the database by itself,
+            // waiting for it must not hold a connection the engine may need to load balances
+            if (transferProperties.getMode() == TransferProperties.Mode.MEMORY) {
+                transferMetrics.record(Phase.COMMIT, () -> await(transferEngine.getObject().transfer(from.getId(), to.getId(), amount)));
+                return;
+            }
 
-        // withdraw money and add to another balance
-        from.setBalance(from.getBalance().subtract(amount));
-        to.setBalance(to.getBalance().add(amount));
+            // retries run in transactions of their own
+            if (transferProperties.getMode() == TransferProperties.Mode.OPTIMISTIC && !from.isStriped() && !to.isStriped()) {
+                if (resolved) optimisticTransferService.transfer(from, to, amount);
+                else optimisticTransferService.transfer(from.getId(), to.getId(), amount);
+                return;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                transferMetrics.recordCommit();
+
+                // striped balances have no single row to lock, so they always take the guarded path
+                if (from.isStriped() || to.isStriped()) guardedTransfer(from, to, amount);
+                else switch (transferProperties.getMode()) {
+                    case GUARDED -> guardedTransfer(from, to, amount);
+                    case PESSIMISTIC -> lockedTransfer(from, to, amount);
+                }
 
-        // save balances
-        save(from);
-        save(to);
+                // record history in the same transaction
+                ledgerService.record(new Transfer(from.getId(), to.getId(), amount));
+                balanceCache.refreshAfterCommit(List.of(from.getId(), to.getId()));
+            });
+        } catch (RuntimeException e) {
+            transferMetrics.failed(e);
+            throw e;
+        }
     }
 
     /**
@@ -88,41 +213,224 @@ public class BalanceService {
      *
      * @param from   balance to withdraw
      * @param amount amount of money to withdraw
-     * @throws IllegalArgumentException if from is null, amount is null or not enough money
+     * @throws IllegalArgumentException   if from is null or amount is null
+     * @throws InsufficientFundsException if not enough money
      */
-    @Transactional
-    public void withdraw(Balance from, BigDecimal amount) {
+    public void withdraw(Balance from, Money amount) {
         // check if balance is null
         if (from == null) throw new IllegalArgumentException("Balance cannot be null");
         // check if amount is null
         if (amount == null) throw new IllegalArgumentException("Amount cannot be null");
-        // checking if there is enough money
-        if (from.getBalance().compareTo(amount) < 0)
-            throw new IllegalArgumentException("Not enough money for operation");
         // check if amount > 0
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) throw new IllegalArgumentException("Amount can't be <= 0");
+        if (!amount.isPositive()) throw new IllegalArgumentException("Amount can't be <= 0");
+
+        try {
+            if (transferProperties.getMode() == TransferProperties.Mode.MEMORY) {
+                transferMetrics.record(Phase.COMMIT, () -> await(transferEngine.getObject().withdraw(from.getId(), amount)));
+                return;
+            }
+
+            if (transferProperties.getMode() == TransferProperties.Mode.OPTIMISTIC && !from.isStriped()) {
+                optimisticTransferService.transfer(from.getId(), null, amount);
+                return;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                transferMetrics.recordCommit();
+
+                if (from.isStriped()) debit(from.getId(), from.getStripes(), amount);
+                else switch (transferProperties.getMode()) {
+                    case GUARDED -> debit(from.getId(), from.getStripes(), amount);
+                    case PESSIMISTIC -> {
+                        // lock balance
+                        lockBalance(from);
 
-        // lock balance
-        lockBalance(from);
+                        // checking if there is enough money
+                        if (from.getBalance().isLessThan(amount)) throw new InsufficientFundsException();
 
-        // withdraw money
-        from.setBalance(from.getBalance().subtract(amount));
+                        // withdraw money and save balance
+                        transferMetrics.record(Phase.UPDATE, () -> {
+                            from.setBalance(from.getBalance().minus(amount));
+                            save(from);
+                            entityManager.flush();
+                        });
+                    }
+                }
 
-        // save balance
-        save(from);
+                // record history in the same transaction
+                ledgerService.recordWithdrawal(from.getId(), amount);
+                balanceCache.refreshAfterCommit(List.of(from.getId()));
+            });
+        } catch (RuntimeException e) {
+            transferMetrics.failed(e);
+            throw e;
+        }
     }
 
     /**
-     * Lock balance
+     * Transfer money with two conditional updates
+     * Rows are always touched in id order, so opposite transfers can't deadlock,
+     * and the funds check is done by the database on the locked row
+     *
+     * @param from   balance to withdraw
+     * @param to     balance to add
+     * @param amount amount of money to transfer
+     */
+    private void guardedTransfer(AccountState from, AccountState to, Money amount) {
+        if (from.getId() == null || to.getId() == null) throw new IllegalArgumentException("Balances must be saved before transfer");
+
+        if (from.getId() < to.getId()) {
+            debit(from.getId(), from.getStripes(), amount);
+            credit(to.getId(), to.getStripes(), amount);
+        } else {
+            credit(to.getId(), to.getStripes(), amount);
+            debit(from.getId(), from.getStripes(), amount);
+        }
+    }
+
+    /**
+     * Transfer money by locking both rows and setting amounts read under the locks
+     *
+     * @param from   balance to withdraw
+     * @param to     balance to add
+     * @param amount amount of money to transfer
+     */
+    private void lockedTransfer(AccountState from, AccountState to, Money amount) {
+        // lock balances in id order
+        VersionedAmount lockedFrom;
+        VersionedAmount lockedTo;
+        if (from.getId() < to.getId()) {
+            lockedFrom = lockBalance(from.getId());
+            lockedTo = lockBalance(to.getId());
+        } else {
+            lockedTo = lockBalance(to.getId());
+            lockedFrom = lockBalance(from.getId());
+        }
+
+        // checking if there is enough money
+        if (lockedFrom.getAmount() < amount.minor()) throw new InsufficientFundsException();
+
+        // withdraw money and add to another balance
+        transferMetrics.record(Phase.UPDATE, () -> {
+            balanceRepository.setAmount(from.getId(), Money.ofMinor(lockedFrom.getAmount() - amount.minor()));
+            balanceRepository.setAmount(to.getId(), Money.ofMinor(lockedTo.getAmount() + amount.minor()));
+        });
+    }
+
+    /**
+     * Subtract money from balance if it holds enough
+     * Rolls back the current transaction on failure
+     *
+     * @param id      balance id
+     * @param stripes number of balance slots
+     * @param amount  amount of money
+     */
+    private void debit(Long id, int stripes, Money amount) {
+        if (stripes > 1) {
+            transferMetrics.record(Phase.UPDATE, () -> stripedBalanceService.debit(id, stripes, amount));
+            return;
+        }
+
+        if (transferMetrics.record(Phase.UPDATE, () -> balanceRepository.debit(id, amount)) == 1) return;
+
+        if (!balanceRepository.existsById(id)) throw new IllegalArgumentException("Balance not found");
+        throw new InsufficientFundsException();
+    }
+
+    /**
+     * Add money to balance
+     *
+     * @param id      balance id
+     * @param stripes number of balance slots
+     * @param amount  amount of money
+     */
+    private void credit(Long id, int stripes, Money amount) {
+        if (stripes > 1) {
+            transferMetrics.record(Phase.UPDATE, () -> stripedBalanceService.credit(id, stripes, amount));
+            return;
+        }
+
+        if (transferMetrics.record(Phase.UPDATE, () -> balanceRepository.credit(id, amount)) == 0) throw new IllegalArgumentException("Balance not found");
+    }
+
+    /**
+     * Wait until engine operation is durable
+     *
+     * @param result operation result
+     * @throws InsufficientFundsException if not enough money
+     * @throws IllegalStateException      if operation is not durable in time
+     */
+    private void await(CompletableFuture<Void> result) {
+        try {
+            result.get(engineProperties.getAckTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException("Transfer failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Transfer is not confirmed in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for transfer");
+        }
+    }
+
+    /**
+     * Lock balance and reload its state
+     * Loaded state may be older than the lock, saving it back would fail the version check
      *
      * @param balance balance to lock
      */
     private void lockBalance(Balance balance) {
-        entityManager.lock(balance, LockModeType.PESSIMISTIC_WRITE);
+        transferMetrics.record(Phase.LOCK, () -> entityManager.refresh(balance, LockModeType.PESSIMISTIC_WRITE));
+    }
+
+    /**
+     * Lock balance row and read its state
+     *
+     * @param id balance id
+     * @return state under the lock
+     */
+    private VersionedAmount lockBalance(Long id) {
+        return transferMetrics.record(Phase.LOCK, () -> balanceRepository.lockVersionedById(id))
+                .orElseThrow(() -> new IllegalArgumentException("Balance not found"));
+    }
+
+    /**
+     * Get money held by balance
+     * The in-memory engine is ahead of the database, so its value is used when it's enabled
+     *
+     * @param balance loaded balance
+     * @return money held by balance and all its stripes
+     */
+    public Money total(Balance balance) {
+        if (transferProperties.getMode() == TransferProperties.Mode.MEMORY)
+            return transferEngine.getObject().balance(balance.getId()).orElseGet(balance::getTotal);
+
+        return balance.getTotal();
+    }
+
+    /**
+     * Get money held by user balance
+     * Read through the balance cache, unless the in-memory engine is enabled, which is ahead of the database anyway
+     * Misses are loaded in a read-only transaction, so they may be served by the replica,
+     * and again from the primary if the replica is behind a transfer committed on this node
+     *
+     * @param user balance owner
+     * @return money held by balance or empty if balance not exists
+     */
+    public Optional<Money> balance(User user) {
+        if (transferProperties.getMode() == TransferProperties.Mode.MEMORY)
+            return findByUser(user).map(this::total);
+
+        // outside of a transaction the repository reads from the primary
+        return balanceCache.get(user.getId(),
+                () -> readOnlyTransactionTemplate.execute(status -> balanceRepository.findByUser(user)),
+                () -> balanceRepository.findByUser(user));
     }
 
     /**
      * Find balance by user
+     * Always read from the primary, transfers act on the loaded balance
      *
      * @param user user to find balance
      * @return optional balance
@@ -134,6 +442,7 @@ public class BalanceService {
 
     /**
      * Check if balance exists by user
+     * Always read from the primary, balances are created right after this check
      *
      * @param user user to check
      * @return true if balance exists
@@ -0,0 +1,256 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.controller.dto.TransferDto;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.model.TransferStatus;
+import com.serezka.server.money.database.repository.AccountRef;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.VersionedAmount;
+import com.serezka.server.money.engine.TransferEngine;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class BatchTransferService {
+    BalanceRepository balanceRepository;
+    TransactionTemplate transactionTemplate;
+    TransferProperties transferProperties;
+    LedgerService ledgerService;
+    ObjectProvider<TransferEngine> transferEngine;
+    BalanceCache balanceCache;
+    StripedBalanceService stripedBalanceService;
+
+    /**
+     * Transfer money from one balance to many recipients
+     * Recipients are resolved with one query per chunk and every chunk is applied in its own transaction
+     *
+     * @param from      balance to withdraw
+     * @param transfers recipients and amounts
+     * @return status of every transfer, in request order
+     */
+    public List<TransferStatus> transfer(Balance from, List<TransferDto> transfers) {
+        if (from == null || from.getId() == null) throw new IllegalArgumentException("Balance cannot be null");
+
+        int chunkSize = transferProperties.getBatch().getChunkSize();
+        List<TransferStatus> statuses = new ArrayList<>(transfers.size());
+
+        for (int start = 0; start < transfers.size(); start += chunkSize)
+            statuses.addAll(transferChunk(from.getId(), transfers.subList(start, Math.min(start + chunkSize, transfers.size()))));
+
+        return statuses;
+    }
+
+    private List<TransferStatus> transferChunk(Long fromId, List<TransferDto> chunk) {
+        // resolve all recipients of the chunk with one query
+        Set<String> usernames = chunk.stream()
+                .map(TransferDto::to)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, Long> accounts = balanceRepository.findAccountsByUsernameIn(usernames).stream()
+                .collect(Collectors.toMap(AccountRef::getUsername, AccountRef::getId));
+
+        TransferStatus[] statuses = new TransferStatus[chunk.size()];
+        List<Transfer> resolved = new ArrayList<>(chunk.size());
+        List<Integer> positions = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferDto transfer = chunk.get(i);
+            Long toId = transfer.to() == null ? null : accounts.get(transfer.to());
+
+            if (toId == null) statuses[i] = TransferStatus.UNKNOWN_USER;
+            else if (transfer.amount() == null) statuses[i] = TransferStatus.INVALID;
+            else {
+                resolved.add(new Transfer(fromId, toId, transfer.amount()));
+                positions.add(i);
+            }
+        }
+
+        List<TransferStatus> applied = apply(resolved);
+        for (int i = 0; i < applied.size(); i++) statuses[positions.get(i)] = applied.get(i);
+
+        return Arrays.asList(statuses);
+    }
+
+    /**
+     * Apply transfers in one transaction
+     * Every touched balance is locked up front in id order, funds are checked in memory
+     * and resulting deltas and ledger entries are written with one JDBC batch each.
+     * Striped senders are checked against all their slots, striped recipients are credited
+     * in one random slot, so hot recipients don't serialize batches on their balance row
+     *
+     * @param transfers transfers to apply, in order
+     * @return status of every transfer, in the same order
+     */
+    public List<TransferStatus> apply(List<Transfer> transfers) {
+        if (transfers.isEmpty()) return List.of();
+        if (!appliesInTransaction()) return applyInEngine(transfers);
+
+        return transactionTemplate.execute(status -> {
+            Set<Long> ids = new HashSet<>();
+            Set<Long> senders = new HashSet<>();
+            for (Transfer transfer : transfers) {
+                ids.add(transfer.fromId());
+                ids.add(transfer.toId());
+                senders.add(transfer.fromId());
+            }
+
+            // number of slots by balance id, missing balances are absent
+            Map<Long, Integer> stripes = balanceRepository.findVersionedByIdIn(ids).stream()
+                    .collect(Collectors.toMap(VersionedAmount::getId, VersionedAmount::getStripes));
+            Map<Long, Integer> creditSlots = new HashMap<>();
+            Map<Long, Long> balances = lock(stripes, senders, creditSlots);
+            Map<Long, Long> deltas = new HashMap<>();
+
+            List<TransferStatus> statuses = new ArrayList<>(transfers.size());
+            List<Transfer> applied = new ArrayList<>(transfers.size());
+            for (Transfer transfer : transfers) {
+                TransferStatus transferStatus = apply(transfer, stripes, balances, deltas);
+                if (transferStatus == TransferStatus.OK) applied.add(transfer);
+                statuses.add(transferStatus);
+            }
+
+            applyDeltas(stripes, creditSlots, deltas);
+            ledgerService.record(applied);
+            balanceCache.refreshAfterCommit(deltas.keySet());
+            return statuses;
+        });
+    }
+
+    /**
+     * @return true if {@link #apply(List)} runs in one transaction, so a failed call applied nothing,
+     * false if transfers go to the in-memory engine and each of them is applied on its own
+     */
+    public boolean appliesInTransaction() {
+        return transferProperties.getMode() != TransferProperties.Mode.MEMORY;
+    }
+
+    /**
+     * Lock balances in (balance id, slot) order, the order single transfers lock them in
+     * Senders and unstriped recipients are locked whole, striped recipients only in the slot they will be credited
+     *
+     * @param stripes     number of slots by balance id
+     * @param senders     ids of sending balances
+     * @param creditSlots filled with the locked slot of every striped recipient
+     * @return amounts in minor units by locked balance id, striped senders hold the total of their slots
+     */
+    private Map<Long, Long> lock(Map<Long, Integer> stripes, Set<Long> senders, Map<Long, Integer> creditSlots) {
+        Map<Long, Long> balances = new HashMap<>();
+        List<Long> unstriped = new ArrayList<>();
+
+        for (Long id : new TreeSet<>(stripes.keySet())) {
+            int slots = stripes.get(id);
+            if (slots <= 1) {
+                unstriped.add(id);
+                continue;
+            }
+
+            // lower balances first, their rows are locked with one statement
+            balances.putAll(balanceRepository.lockBalances(unstriped));
+            unstriped.clear();
+
+            if (senders.contains(id)) balances.put(id, stripedBalanceService.lockTotal(id));
+            else creditSlots.put(id, stripedBalanceService.lockSlot(id, slots));
+        }
+        balances.putAll(balanceRepository.lockBalances(unstriped));
+
+        return balances;
+    }
+
+    private TransferStatus apply(Transfer transfer, Map<Long, Integer> stripes, Map<Long, Long> balances, Map<Long, Long> deltas) {
+        if (transfer.amount() == null || !transfer.amount().isPositive() || Objects.equals(transfer.fromId(), transfer.toId()))
+            return TransferStatus.INVALID;
+
+        long amount = transfer.amount().minor();
+        Long from = balances.get(transfer.fromId());
+        if (from == null || !stripes.containsKey(transfer.toId())) return TransferStatus.UNKNOWN_USER;
+        if (from < amount) return TransferStatus.INSUFFICIENT_FUNDS;
+
+        balances.put(transfer.fromId(), from - amount);
+        balances.computeIfPresent(transfer.toId(), (id, to) -> to + amount);
+        deltas.merge(transfer.fromId(), -amount, Long::sum);
+        deltas.merge(transfer.toId(), amount, Long::sum);
+
+        return TransferStatus.OK;
+    }
+
+    /**
+     * Write deltas, rows of unstriped balances with one JDBC batch and striped balances slot by slot
+     * All touched rows are already locked
+     */
+    private void applyDeltas(Map<Long, Integer> stripes, Map<Long, Integer> creditSlots, Map<Long, Long> deltas) {
+        Map<Long, Long> rows = new HashMap<>();
+
+        deltas.forEach((id, delta) -> {
+            Integer slot = creditSlots.get(id);
+            if (slot != null) stripedBalanceService.creditSlot(id, slot, Money.ofMinor(delta));
+            else if (delta < 0 && stripes.get(id) > 1) stripedBalanceService.debit(id, stripes.get(id), Money.ofMinor(-delta));
+            else rows.put(id, delta);
+        });
+
+        balanceRepository.applyDeltas(rows);
+    }
+
+    /**
+     * Submit all transfers to the engine at once and wait for every result
+     * Transfers from one balance run on one shard, so they are still applied in order.
+     * Every transfer is durable on its own, so a failed one never fails the others and this never throws
+     */
+    private List<TransferStatus> applyInEngine(List<Transfer> transfers) {
+        TransferEngine engine = transferEngine.getObject();
+
+        List<CompletableFuture<TransferStatus>> results = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            Money amount = transfer.amount();
+            if (amount == null || !amount.isPositive() || Objects.equals(transfer.fromId(), transfer.toId())) {
+                results.add(CompletableFuture.completedFuture(TransferStatus.INVALID));
+                continue;
+            }
+
+            CompletableFuture<TransferStatus> result;
+            try {
+                result = engine.transfer(transfer.fromId(), transfer.toId(), amount)
+                        .thenApply(ignored -> TransferStatus.OK)
+                        .exceptionally(BatchTransferService::status);
+            } catch (RuntimeException e) {
+                // loading a cold balance failed before the transfer reached a shard
+                result = CompletableFuture.completedFuture(status(e));
+            }
+            results.add(result);
+        }
+
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static TransferStatus status(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause instanceof InsufficientFundsException) return TransferStatus.INSUFFICIENT_FUNDS;
+        if (cause instanceof IllegalArgumentException) return TransferStatus.UNKNOWN_USER;
+
+        log.error("Transfer failed in engine: {}", cause.getMessage());
+        return TransferStatus.FAILED;
+    }
+}
@@ -0,0 +1,145 @@
+package com.serezka.server.money.database.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.serezka.server.money.config.ExportProperties;
+import com.serezka.server.money.database.model.Money;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Full dumps of users, balances and ledger entries as newline delimited JSON
+ * <p>
+ * Rows are read with a forward-only cursor in a read-only transaction, which Postgres needs to fetch
+ * in chunks of the fetch size instead of all at once, and written to the output as they arrive.
+ * Nothing is loaded into the persistence context, so memory use doesn't depend on the number of rows.
+ */
+@Service
+@Log4j2
+public class ExportService {
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public enum Dataset {
+        USERS("SELECT id, username, mail, role, localization, registered FROM users ORDER BY id") {
+            @Override
+            void write(ResultSet row, JsonGenerator json) throws SQLException, IOException {
+                json.writeNumberField("id", row.getLong("id"));
+                json.writeStringField("username", row.getString("username"));
+                json.writeStringField("mail", row.getString("mail"));
+                json.writeStringField("role", row.getString("role"));
+                json.writeStringField("localization", row.getString("localization"));
+                writeInstant(json, "registered", row.getTimestamp("registered"));
+            }
+        },
+        BALANCES("SELECT b.id, b.user_id, u.username, b.balance + COALESCE(s.amount, 0) AS total, b.stripes, b.version " +
+                "FROM balances b JOIN users u ON u.id = b.user_id " +
+                "LEFT JOIN (SELECT balance_id, SUM(amount) AS amount FROM balance_stripes GROUP BY balance_id) s ON s.balance_id = b.id " +
+                "ORDER BY b.id") {
+            @Override
+            void write(ResultSet row, JsonGenerator json) throws SQLException, IOException {
+                json.writeNumberField("id", row.getLong("id"));
+                json.writeNumberField("userId", row.getLong("user_id"));
+                json.writeStringField("username", row.getString("username"));
+                json.writeStringField("balance", Money.format(row.getLong("total")));
+                json.writeNumberField("stripes", row.getInt("stripes"));
+                json.writeNumberField("version", row.getLong("version"));
+            }
+        },
+        TRANSFERS("SELECT id, transfer_id, account_id, counterparty_id, amount, created FROM ledger_entries ORDER BY id") {
+            @Override
+            void write(ResultSet row, JsonGenerator json) throws SQLException, IOException {
+                json.writeNumberField("id", row.getLong("id"));
+                json.writeStringField("transferId", row.getString("transfer_id"));
+                json.writeNumberField("accountId", row.getLong("account_id"));
+                long counterparty = row.getLong("counterparty_id");
+                if (row.wasNull()) json.writeNullField("counterpartyId");
+                else json.writeNumberField("counterpartyId", counterparty);
+                json.writeStringField("amount", Money.format(row.getLong("amount")));
+                writeInstant(json, "created", row.getTimestamp("created"));
+            }
+        };
+
+        private final String query;
+
+        Dataset(String query) {
+            this.query = query;
+        }
+
+        /**
+         * Write fields of the current row, the enclosing object is written by the caller
+         */
+        abstract void write(ResultSet row, JsonGenerator json) throws SQLException, IOException;
+
+        private static void writeInstant(JsonGenerator json, String field, Timestamp timestamp) throws IOException {
+            if (timestamp == null) json.writeNullField(field);
+            else json.writeStringField(field, timestamp.toInstant().toString());
+        }
+    }
+
+    public ExportService(DataSource dataSource, PlatformTransactionManager transactionManager, ExportProperties properties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(properties.getFetchSize());
+
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Write every row of dataset to output, one JSON object per line
+     * Output is flushed but not closed
+     *
+     * @param dataset dataset to export
+     * @param output  stream to write to
+     * @param gzip    compress output
+     * @return number of written rows
+     * @throws UncheckedIOException if output can't be written, for example because the client went away
+     */
+    public long export(Dataset dataset, OutputStream output, boolean gzip) {
+        AtomicLong rows = new AtomicLong();
+
+        try {
+            OutputStream target = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE) : output;
+            JsonGenerator json = jsonFactory.createGenerator(target, JsonEncoding.UTF8);
+
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(dataset.query, row -> {
+                try {
+                    json.writeStartObject();
+                    dataset.write(row, json);
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                    rows.incrementAndGet();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+
+            json.close();
+            if (target instanceof GZIPOutputStream compressed) compressed.finish();
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Exported {} rows of {}", rows.get(), dataset.name().toLowerCase());
+        return rows.get();
+    }
+}
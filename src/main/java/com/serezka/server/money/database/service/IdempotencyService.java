@@ -0,0 +1,249 @@
+package com.serezka.server.money.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.serezka.server.money.config.IdempotencyProperties;
+import com.serezka.server.money.database.model.IdempotencyRecord;
+import com.serezka.server.money.database.repository.IdempotencyRepository;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Executes requests at most once per Idempotency-Key
+ * Responses are stored in the database together with the change they describe, or right after it
+ * for changes durable on their own, and fronted by a bounded in-memory cache, duplicates arriving while the first
+ * request is still running wait for its result
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Log4j2
+public class IdempotencyService {
+    IdempotencyRepository idempotencyRepository;
+    TransactionTemplate transactionTemplate;
+    IdempotencyProperties idempotencyProperties;
+
+    Cache<String, Result> results;
+    ConcurrentMap<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyRepository idempotencyRepository,
+                              TransactionTemplate transactionTemplate,
+                              IdempotencyProperties idempotencyProperties) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.idempotencyProperties = idempotencyProperties;
+
+        this.results = Caffeine.newBuilder()
+                .maximumSize(idempotencyProperties.getCacheSize())
+                .expireAfterWrite(idempotencyProperties.getTtl())
+                .build();
+    }
+
+    /**
+     * Execute action once per key
+     * Successful responses are stored in the transaction of the action, so a stored key always
+     * means the change was committed; rejections (4xx) are stored after the action rolled back,
+     * server errors are not stored, the request may be repeated with the same key
+     *
+     * @param ownerId     id of user sending the request
+     * @param key         client supplied Idempotency-Key
+     * @param fingerprint value identifying request payload, a key reused with other payload is rejected,
+     *                    only its SHA-256 is stored
+     * @param action      request to execute, joins the surrounding transaction
+     * @return response of the first execution
+     */
+    public ResponseEntity<String> execute(Long ownerId, String key, String fingerprint, Supplier<ResponseEntity<String>> action) {
+        return execute(ownerId, key, fingerprint, true, action);
+    }
+
+    /**
+     * Execute action once per key
+     * Without a transaction the key is claimed as pending before the action runs and completed after it,
+     * a key left pending because the action failed is never run again, its outcome is unknown
+     *
+     * @param ownerId       id of user sending the request
+     * @param key           client supplied Idempotency-Key
+     * @param fingerprint   value identifying request payload, a key reused with other payload is rejected,
+     *                      only its SHA-256 is stored
+     * @param transactional run action in the transaction storing its response, false for actions durable on their own
+     * @param action        request to execute
+     * @return response of the first execution
+     */
+    public ResponseEntity<String> execute(Long ownerId, String key, String fingerprint, boolean transactional,
+                                          Supplier<ResponseEntity<String>> action) {
+        String id = ownerId + ":" + key;
+        String digest = digest(fingerprint);
+
+        Result cached = results.getIfPresent(id);
+        if (cached != null) return cached.toResponse(digest);
+
+        CompletableFuture<Result> own = new CompletableFuture<>();
+        CompletableFuture<Result> running = inFlight.putIfAbsent(id, own);
+        if (running != null) return await(running).toResponse(digest);
+
+        try {
+            Result result = Optional.ofNullable(results.getIfPresent(id))
+                    .or(() -> idempotencyRepository.findById(id).map(Result::of))
+                    .orElseGet(() -> transactional
+                            ? executeAndStore(id, digest, action)
+                            : claimAndExecute(id, digest, action));
+
+            // pending keys may be completed by another node, unexpected failures are not stored at all
+            if (result.isFinal()) results.put(id, result);
+            own.complete(result);
+            return result.toResponse(digest);
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, own);
+        }
+    }
+
+    private Result executeAndStore(String id, String fingerprint, Supplier<ResponseEntity<String>> action) {
+        try {
+            Result result = transactionTemplate.execute(status -> {
+                ResponseEntity<String> response = action.get();
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    // nothing was changed, keep the failure out of this transaction
+                    status.setRollbackOnly();
+                    return new Result(fingerprint, response.getStatusCode().value(), response.getBody());
+                }
+
+                return Result.of(idempotencyRepository.saveAndFlush(record(id, fingerprint, response)));
+            });
+
+            if (result != null && result.isRejection())
+                transactionTemplate.executeWithoutResult(status ->
+                        idempotencyRepository.saveAndFlush(record(id, fingerprint, result.toResponse(fingerprint))));
+
+            return result;
+        } catch (DataIntegrityViolationException e) {
+            // same key was committed concurrently by another node, our changes were rolled back
+            Result stored = idempotencyRepository.findById(id)
+                    .map(Result::of)
+                    .orElseThrow(() -> e);
+            log.info("Idempotency key {} was used concurrently, replaying stored response", id);
+            return stored;
+        }
+    }
+
+    private Result claimAndExecute(String id, String fingerprint, Supplier<ResponseEntity<String>> action) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    idempotencyRepository.saveAndFlush(record(id, fingerprint, IdempotencyRecord.PENDING, null)));
+        } catch (DataIntegrityViolationException e) {
+            Result claimed = idempotencyRepository.findById(id)
+                    .map(Result::of)
+                    .orElseThrow(() -> e);
+            log.info("Idempotency key {} was claimed concurrently, replaying its state", id);
+            return claimed;
+        }
+
+        // an exception or a server error leaves the key pending, the action may have been applied anyway
+        Result result = Result.of(fingerprint, action.get());
+        if (result.isFinal())
+            transactionTemplate.executeWithoutResult(status ->
+                    idempotencyRepository.complete(id, result.status(), result.body()));
+        else log.warn("Idempotency key {} is left pending, request failed with {}", id, result.status());
+
+        return result;
+    }
+
+    private Result await(CompletableFuture<Result> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    private static String digest(String fingerprint) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(fingerprint.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private IdempotencyRecord record(String id, String fingerprint, ResponseEntity<String> response) {
+        return record(id, fingerprint, response.getStatusCode().value(), response.getBody());
+    }
+
+    private IdempotencyRecord record(String id, String fingerprint, int status, String body) {
+        return IdempotencyRecord.builder()
+                .id(id)
+                .fingerprint(fingerprint)
+                .status(status)
+                .body(body)
+                .created(Instant.now())
+                .build();
+    }
+
+    /**
+     * Remove keys older than configured ttl
+     */
+    @Scheduled(fixedDelayString = "PT1H", initialDelayString = "PT1M")
+    public void purgeExpired() {
+        int removed = transactionTemplate.execute(status ->
+                idempotencyRepository.deleteCreatedBefore(Instant.now().minus(idempotencyProperties.getTtl())));
+        if (removed > 0) log.info("Removed {} expired idempotency keys", removed);
+    }
+
+    private record Result(String fingerprint, int status, String body) {
+        static Result of(IdempotencyRecord record) {
+            return new Result(record.getFingerprint(), record.getStatus(), record.getBody());
+        }
+
+        static Result of(String fingerprint, ResponseEntity<String> response) {
+            return new Result(fingerprint, response.getStatusCode().value(), response.getBody());
+        }
+
+        /**
+         * @return true if the response is the outcome of the request, not a pending key or an unexpected failure
+         */
+        boolean isFinal() {
+            return status != IdempotencyRecord.PENDING && !HttpStatusCode.valueOf(status).is5xxServerError();
+        }
+
+        /**
+         * @return true if the request was rejected for a reason repeating it won't change
+         */
+        boolean isRejection() {
+            return isFinal() && HttpStatusCode.valueOf(status).is4xxClientError();
+        }
+
+        ResponseEntity<String> toResponse(String requestFingerprint) {
+            if (!Objects.equals(fingerprint, requestFingerprint))
+                return ResponseEntity.unprocessableEntity()
+                        .body("Idempotency-Key was already used with another request");
+
+            if (status == IdempotencyRecord.PENDING)
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body("Request with this Idempotency-Key is still running or its outcome is unknown");
+
+            return ResponseEntity.status(status).body(body);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.serezka.server.money.database.service;
+
+/**
+ * Thrown when a balance does not hold enough money for the requested operation
+ */
+public class InsufficientFundsException extends IllegalArgumentException {
+    public InsufficientFundsException() {
+        super("Not enough money for operation");
+    }
+}
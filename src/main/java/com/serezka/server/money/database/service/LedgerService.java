@@ -0,0 +1,92 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.money.database.model.LedgerEntry;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.repository.HistoryEntry;
+import com.serezka.server.money.database.repository.LedgerRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class LedgerService {
+    LedgerRepository ledgerRepository;
+
+    /**
+     * Record both postings of transfer
+     * Must be called in the transaction that moved the money
+     *
+     * @param transfer applied transfer
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Transfer transfer) {
+        record(List.of(transfer));
+    }
+
+    /**
+     * Record postings of transfers with a single JDBC batch
+     * Must be called in the transaction that moved the money
+     *
+     * @param transfers applied transfers
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(List<Transfer> transfers) {
+        if (transfers.isEmpty()) return;
+
+        Instant now = Instant.now();
+        List<LedgerEntry> entries = new ArrayList<>(transfers.size() * 2);
+        for (Transfer transfer : transfers) {
+            entries.add(entry(transfer.id(), transfer.fromId(), transfer.toId(), transfer.amount().negate(), now));
+            entries.add(entry(transfer.id(), transfer.toId(), transfer.fromId(), transfer.amount(), now));
+        }
+
+        ledgerRepository.appendAll(entries);
+    }
+
+    /**
+     * Record withdrawal from single balance
+     * Must be called in the transaction that moved the money
+     *
+     * @param accountId balance id
+     * @param amount    withdrawn amount
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordWithdrawal(Long accountId, Money amount) {
+        ledgerRepository.appendAll(List.of(entry(UUID.randomUUID(), accountId, null, amount.negate(), Instant.now())));
+    }
+
+    /**
+     * Get page of balance history, newest first
+     *
+     * @param accountId balance id
+     * @param before    id of last entry of previous page, null for first page
+     * @param limit     page size
+     * @return history entries
+     */
+    @Transactional(readOnly = true)
+    public List<HistoryEntry> history(Long accountId, Long before, int limit) {
+        return ledgerRepository.findHistory(accountId, before == null ? Long.MAX_VALUE : before, Limit.of(limit));
+    }
+
+    private LedgerEntry entry(UUID transferId, Long accountId, Long counterpartyId, Money amount, Instant created) {
+        return LedgerEntry.builder()
+                .transferId(transferId)
+                .accountId(accountId)
+                .counterpartyId(counterpartyId)
+                .amount(amount)
+                .created(created)
+                .build();
+    }
+}
@@ -0,0 +1,222 @@
+package com.serezka.server.money.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.repository.AccountState;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.VersionedAmount;
+import com.serezka.server.money.metrics.TransferMetrics;
+import com.serezka.server.money.metrics.TransferMetrics.Phase;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transfers checked by balance version instead of row locks
+ * <p>
+ * Balances are read without locks and written back with {@code UPDATE ... WHERE version = ?}. If any of them was
+ * changed in between, or the update hit a deadlock, the attempt is rolled back and retried after a random delay
+ * growing with every attempt.
+ * Balances that keep conflicting are locked with {@code SELECT ... FOR UPDATE} for a while instead, and so is a
+ * transfer that ran out of attempts, so every transfer completes.
+ */
+@Service
+@Log4j2
+public class OptimisticTransferService {
+    private final BalanceRepository balanceRepository;
+    private final LedgerService ledgerService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferMetrics transferMetrics;
+    private final BalanceCache balanceCache;
+    private final TransferProperties.Optimistic properties;
+
+    // conflicts per balance id within the window, counted from the first one
+    private final Cache<Long, AtomicInteger> conflicts;
+    // balances transferred with row locks until the entry expires
+    private final Cache<Long, Boolean> contended;
+
+    public OptimisticTransferService(BalanceRepository balanceRepository, LedgerService ledgerService,
+                                     TransactionTemplate transactionTemplate, TransferMetrics transferMetrics,
+                                     BalanceCache balanceCache, TransferProperties transferProperties) {
+        this.balanceRepository = balanceRepository;
+        this.ledgerService = ledgerService;
+        this.transactionTemplate = transactionTemplate;
+        this.transferMetrics = transferMetrics;
+        this.balanceCache = balanceCache;
+        this.properties = transferProperties.getOptimistic();
+
+        this.conflicts = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getFallbackWindow())
+                .build();
+        this.contended = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getFallbackDuration())
+                .build();
+    }
+
+    /**
+     * Move money between balances, or withdraw it if recipient is null
+     * Inside a running transaction a failed attempt can't be retried, so row locks are used right away
+     *
+     * @param fromId id of balance to withdraw
+     * @param toId   id of balance to add, null for withdrawal
+     * @param amount amount of money, positive
+     * @throws IllegalArgumentException   if balance not found
+     * @throws InsufficientFundsException if not enough money
+     */
+    public void transfer(Long fromId, Long toId, Money amount) {
+        transfer(fromId, toId, amount, null, null);
+    }
+
+    /**
+     * Move money between balances whose state was just resolved
+     * The first attempt writes over the resolved versions instead of reading balances again, if they were changed
+     * since, its version check fails like with any concurrent transfer. State showing too little money is read
+     * again, it may be older than a credit
+     *
+     * @param from   balance to withdraw
+     * @param to     balance to add
+     * @param amount amount of money, positive
+     * @throws IllegalArgumentException   if balance not found
+     * @throws InsufficientFundsException if not enough money
+     */
+    public void transfer(AccountState from, AccountState to, Money amount) {
+        boolean trusted = from.getVersion() != null && to.getVersion() != null && from.getAmount() >= amount.minor();
+        transfer(from.getId(), to.getId(), amount, trusted ? from : null, trusted ? to : null);
+    }
+
+    private void transfer(Long fromId, Long toId, Money amount, VersionedAmount knownFrom, VersionedAmount knownTo) {
+        if (TransactionSynchronizationManager.isActualTransactionActive() || isContended(fromId) || isContended(toId)) {
+            attempt(fromId, toId, amount, true, null, null);
+            return;
+        }
+
+        for (int attempt = 1; attempt <= properties.getMaxAttempts(); attempt++) {
+            try {
+                if (attempt == 1) attempt(fromId, toId, amount, false, knownFrom, knownTo);
+                else attempt(fromId, toId, amount, false, null, null);
+                return;
+            } catch (ObjectOptimisticLockingFailureException e) {
+                transferMetrics.failed(e);
+                conflict((Long) e.getIdentifier());
+            } catch (ConcurrencyFailureException e) {
+                // deadlock or lock timeout of the version checked update, either side may be the hot one
+                transferMetrics.failed(e);
+                conflict(fromId);
+                if (toId != null) conflict(toId);
+            }
+
+            if (attempt < properties.getMaxAttempts()) {
+                transferMetrics.retry();
+                backoff(attempt);
+            }
+        }
+
+        transferMetrics.fallback();
+        attempt(fromId, toId, amount, true, null, null);
+    }
+
+    /**
+     * @return whether balance is transferred with row locks now
+     */
+    public boolean isContended(Long id) {
+        return id != null && contended.getIfPresent(id) != null;
+    }
+
+    /**
+     * Run one transfer attempt in its own transaction
+     * Balances are read and written in id order, so concurrent attempts can't deadlock on row locks
+     *
+     * @param locked    lock balances when reading them, the attempt can't conflict then
+     * @param knownFrom state of sender to use instead of reading it, null to read
+     * @param knownTo   state of recipient to use instead of reading it, null to read
+     * @throws ObjectOptimisticLockingFailureException if a balance was changed concurrently
+     */
+    private void attempt(Long fromId, Long toId, Money amount, boolean locked, VersionedAmount knownFrom, VersionedAmount knownTo) {
+        transactionTemplate.executeWithoutResult(status -> {
+            transferMetrics.recordCommit();
+
+            VersionedAmount from;
+            VersionedAmount to = null;
+            if (toId == null) from = read(fromId, locked, knownFrom);
+            else if (fromId < toId) {
+                from = read(fromId, locked, knownFrom);
+                to = read(toId, locked, knownTo);
+            } else {
+                to = read(toId, locked, knownTo);
+                from = read(fromId, locked, knownFrom);
+            }
+
+            if (from.getAmount() < amount.minor()) throw new InsufficientFundsException();
+
+            long fromAmount = from.getAmount() - amount.minor();
+            if (toId == null) write(fromId, from, fromAmount);
+            else {
+                long toAmount = to.getAmount() + amount.minor();
+                if (fromId < toId) {
+                    write(fromId, from, fromAmount);
+                    write(toId, to, toAmount);
+                } else {
+                    write(toId, to, toAmount);
+                    write(fromId, from, fromAmount);
+                }
+            }
+
+            // record history in the same transaction
+            if (toId == null) ledgerService.recordWithdrawal(fromId, amount);
+            else ledgerService.record(new Transfer(fromId, toId, amount));
+        });
+    }
+
+    private VersionedAmount read(Long id, boolean locked, VersionedAmount known) {
+        if (known != null) return known;
+
+        return (locked
+                ? transferMetrics.record(Phase.LOCK, () -> balanceRepository.lockVersionedById(id))
+                : transferMetrics.record(Phase.LOAD, () -> balanceRepository.findVersionedById(id)))
+                .orElseThrow(() -> new IllegalArgumentException("Balance not found"));
+    }
+
+    private void write(Long id, VersionedAmount read, long amount) {
+        int updated = transferMetrics.record(Phase.UPDATE, () -> balanceRepository.compareAndSet(id, read.getVersion(), Money.ofMinor(amount)));
+        if (updated == 0) throw new ObjectOptimisticLockingFailureException(Balance.class, id);
+
+        // the update bumped the version it checked
+        balanceCache.refreshAfterCommit(id, amount, read.getVersion() + 1);
+    }
+
+    private void conflict(Long id) {
+        AtomicInteger count = conflicts.get(id, key -> new AtomicInteger());
+        if (count.incrementAndGet() < properties.getFallbackThreshold()) return;
+
+        conflicts.invalidate(id);
+        if (contended.asMap().putIfAbsent(id, Boolean.TRUE) == null)
+            log.info("Balance {} is contended, locking it for {}", id, properties.getFallbackDuration());
+    }
+
+    /**
+     * Sleep for a random time up to the backoff of this attempt, so conflicting transfers spread out
+     */
+    private void backoff(int attempt) {
+        long initial = properties.getInitialBackoff().toNanos();
+        long bound = Math.min(properties.getMaxBackoff().toNanos(), initial << Math.min(attempt - 1, 30));
+        if (bound <= 0) return;
+
+        try {
+            Thread.sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(bound)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry transfer");
+        }
+    }
+}
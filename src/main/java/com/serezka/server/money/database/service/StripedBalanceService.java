@@ -0,0 +1,210 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.BalanceStripe;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.BalanceStripeRepository;
+import com.serezka.server.money.database.repository.StripeAmount;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Operations on striped balances
+ * A striped balance of N slots keeps slot 0 in its {@code balances} row and slots 1..N-1 in {@code balance_stripes}.
+ * Credits go to a random slot, debits try slots starting from a random one and drain all slots
+ * under lock when no single slot covers the amount. Rows are always locked in (balance id, slot) order.
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Log4j2
+public class StripedBalanceService {
+    BalanceRepository balanceRepository;
+    BalanceStripeRepository balanceStripeRepository;
+    TransactionTemplate transactionTemplate;
+    TransferProperties transferProperties;
+    BalanceCache balanceCache;
+
+    /**
+     * Split balance into slots and spread its money evenly
+     *
+     * @param balanceId balance id
+     * @param stripes   number of slots, 1 turns striping off
+     * @throws IllegalArgumentException if balance not found or number of slots is out of range
+     */
+    @Transactional
+    public void stripe(Long balanceId, int stripes) {
+        if (stripes < 1 || stripes > transferProperties.getStripes().getMax())
+            throw new IllegalArgumentException("Stripes must be between 1 and " + transferProperties.getStripes().getMax());
+
+        long total = lockTotal(balanceId);
+
+        balanceStripeRepository.deleteByBalanceId(balanceId);
+        List<BalanceStripe> created = new ArrayList<>(stripes - 1);
+        for (int stripe = 1; stripe < stripes; stripe++)
+            created.add(BalanceStripe.builder().balanceId(balanceId).stripe(stripe).build());
+        balanceStripeRepository.saveAllAndFlush(created);
+
+        balanceRepository.setStripes(balanceId, stripes);
+        spread(balanceId, total, stripes);
+        balanceCache.refreshAfterCommit(List.of(balanceId));
+
+        log.info("Balance {} is split into {} slots", balanceId, stripes);
+    }
+
+    /**
+     * Add money to random slot
+     * Must be called in the transaction of the transfer
+     *
+     * @param balanceId balance id
+     * @param stripes   number of slots the balance is known to have
+     * @param amount    amount of money
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void credit(Long balanceId, int stripes, Money amount) {
+        int stripe = ThreadLocalRandom.current().nextInt(stripes);
+
+        // striping may have been turned off since the balance was loaded, slot 0 always exists
+        if (stripe > 0 && balanceStripeRepository.credit(balanceId, stripe, amount) == 1) return;
+        if (balanceRepository.credit(balanceId, amount) == 0) throw new IllegalArgumentException("Balance not found");
+    }
+
+    /**
+     * Lock random slot, so money can be added to it later in the same transaction
+     * Must be called in the transaction of the transfer
+     *
+     * @param balanceId balance id
+     * @param stripes   number of slots the balance is known to have
+     * @return locked slot, 0 for the balance row
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int lockSlot(Long balanceId, int stripes) {
+        int stripe = ThreadLocalRandom.current().nextInt(stripes);
+
+        // striping may have been turned off since the balance was loaded, slot 0 always exists
+        if (stripe > 0 && balanceStripeRepository.lockStripe(balanceId, stripe).isPresent()) return stripe;
+        balanceRepository.lockBalances(List.of(balanceId));
+        return 0;
+    }
+
+    /**
+     * Add money to slot locked with {@link #lockSlot(Long, int)}
+     * Must be called in the transaction of the transfer
+     *
+     * @param balanceId balance id
+     * @param stripe    locked slot
+     * @param amount    amount of money
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void creditSlot(Long balanceId, int stripe, Money amount) {
+        int updated = stripe == 0
+                ? balanceRepository.credit(balanceId, amount)
+                : balanceStripeRepository.credit(balanceId, stripe, amount);
+        if (updated == 0) throw new IllegalArgumentException("Balance not found");
+    }
+
+    /**
+     * Subtract money from the first slot holding enough, starting from a random one,
+     * or from all slots together if none of them does
+     * Must be called in the transaction of the transfer
+     *
+     * @param balanceId balance id
+     * @param stripes   number of slots the balance is known to have
+     * @param amount    amount of money
+     * @throws InsufficientFundsException if all slots together hold less than amount
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void debit(Long balanceId, int stripes, Money amount) {
+        int start = ThreadLocalRandom.current().nextInt(stripes);
+
+        for (int i = 0; i < stripes; i++) {
+            int stripe = (start + i) % stripes;
+            int updated = stripe == 0
+                    ? balanceRepository.debit(balanceId, amount)
+                    : balanceStripeRepository.debit(balanceId, stripe, amount);
+            if (updated == 1) return;
+        }
+
+        drain(balanceId, amount);
+    }
+
+    /**
+     * Take amount from all slots in order while holding locks on all of them
+     */
+    private void drain(Long balanceId, Money amount) {
+        Long main = balanceRepository.lockBalances(List.of(balanceId)).get(balanceId);
+        if (main == null) throw new IllegalArgumentException("Balance not found");
+        List<StripeAmount> stripes = balanceStripeRepository.lockStripes(balanceId);
+
+        long total = main;
+        for (StripeAmount stripe : stripes) total += stripe.getAmount();
+        if (total < amount.minor()) throw new InsufficientFundsException();
+
+        long left = amount.minor();
+        long fromMain = Math.min(main, left);
+        if (fromMain > 0) balanceRepository.applyDeltas(Map.of(balanceId, -fromMain));
+        left -= fromMain;
+
+        for (StripeAmount stripe : stripes) {
+            if (left == 0) break;
+            long taken = Math.min(stripe.getAmount(), left);
+            if (taken > 0) balanceStripeRepository.setAmount(balanceId, stripe.getStripe(), Money.ofMinor(stripe.getAmount() - taken));
+            left -= taken;
+        }
+    }
+
+    /**
+     * Spread money of every striped balance evenly over its slots
+     * Each balance is rebalanced in its own short transaction
+     */
+    @Scheduled(fixedDelayString = "${money.transfer.stripes.rebalance-interval:PT10S}")
+    public void rebalance() {
+        for (Long balanceId : balanceRepository.findStripedIds())
+            transactionTemplate.executeWithoutResult(status -> {
+                long total = lockTotal(balanceId);
+                int stripes = balanceStripeRepository.lockStripes(balanceId).size() + 1;
+                spread(balanceId, total, stripes);
+            });
+    }
+
+    /**
+     * Lock balance row and all its stripes in order
+     * Must be called in a transaction
+     *
+     * @param balanceId balance id
+     * @return money held by all slots, in minor units
+     * @throws IllegalArgumentException if balance not found
+     */
+    public long lockTotal(Long balanceId) {
+        Long main = balanceRepository.lockBalances(List.of(balanceId)).get(balanceId);
+        if (main == null) throw new IllegalArgumentException("Balance not found");
+
+        long total = main;
+        for (StripeAmount stripe : balanceStripeRepository.lockStripes(balanceId)) total += stripe.getAmount();
+        return total;
+    }
+
+    /**
+     * Write even shares of total to locked slots, remainder stays in slot 0
+     */
+    private void spread(Long balanceId, long total, int stripes) {
+        Money share = Money.ofMinor(Math.floorDiv(total, stripes));
+        long main = total - share.minor() * (stripes - 1);
+
+        balanceRepository.setAmount(balanceId, Money.ofMinor(main));
+        for (int stripe = 1; stripe < stripes; stripe++) balanceStripeRepository.setAmount(balanceId, stripe, share);
+    }
+}
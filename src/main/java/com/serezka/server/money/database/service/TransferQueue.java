@@ -0,0 +1,158 @@
+package com.serezka.server.money.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.model.TransferStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers accepted without waiting for their commit
+ * <p>
+ * Submitted transfers are put on a bounded queue, a full queue rejects new ones instead of growing.
+ * One worker drains up to a batch of them at a time and applies the batch with
+ * {@link BatchTransferService#apply(List)}, so the whole batch shares one commit.
+ * Outcomes are kept for polling until they expire.
+ */
+@Service
+@Log4j2
+public class TransferQueue {
+    private final BatchTransferService batchTransferService;
+    private final TransferProperties.Async properties;
+
+    private final BlockingQueue<Queued> queue;
+    // submitted transfers by id, until their outcome expires
+    private final Cache<UUID, Queued> submitted;
+    private volatile boolean running;
+    private Thread thread;
+
+    private record Queued(UUID id, Long userId, Transfer transfer, CompletableFuture<TransferStatus> result) { }
+
+    public TransferQueue(BatchTransferService batchTransferService, TransferProperties transferProperties,
+                         MeterRegistry meterRegistry) {
+        this.batchTransferService = batchTransferService;
+        this.properties = transferProperties.getAsync();
+
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.submitted = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getResultTtl())
+                .build();
+
+        Gauge.builder("money.transfer.queue.size", queue, BlockingQueue::size)
+                .description("Submitted transfers waiting to be applied")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue transfer to be applied later
+     *
+     * @param userId   id of user who submitted the transfer, only they can poll it
+     * @param transfer transfer with resolved balance ids
+     * @return id to poll the outcome with, empty if the queue is full
+     */
+    public Optional<UUID> submit(Long userId, Transfer transfer) {
+        Queued queued = new Queued(UUID.randomUUID(), userId, transfer, new CompletableFuture<>());
+        submitted.put(queued.id(), queued);
+
+        if (!running || !queue.offer(queued)) {
+            submitted.invalidate(queued.id());
+            return Optional.empty();
+        }
+        return Optional.of(queued.id());
+    }
+
+    /**
+     * Get outcome of a submitted transfer
+     *
+     * @param userId id of user polling the transfer
+     * @param id     transfer id
+     * @return future completed once the transfer is applied, empty if transfer is unknown, expired or not theirs
+     */
+    public Optional<CompletableFuture<TransferStatus>> result(Long userId, UUID id) {
+        return Optional.ofNullable(submitted.getIfPresent(id))
+                .filter(queued -> queued.userId().equals(userId))
+                .map(Queued::result);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("transfer-queue").start(this::applyLoop);
+    }
+
+    /**
+     * Stop accepting transfers, apply everything queued so far and stop
+     */
+    @PreDestroy
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyLoop() {
+        List<Queued> batch = new ArrayList<>(properties.getBatchSize());
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Queued first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, properties.getBatchSize() - 1);
+                apply(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Apply batch in one transaction, or one by one if the batch as a whole failed,
+     * so one broken transfer doesn't fail the others
+     * Batches of the in-memory engine are not retried, some of their transfers may be applied already
+     */
+    private void apply(List<Queued> batch) {
+        try {
+            List<TransferStatus> statuses = batchTransferService.apply(batch.stream().map(Queued::transfer).toList());
+            for (int i = 0; i < batch.size(); i++) batch.get(i).result().complete(statuses.get(i));
+            return;
+        } catch (RuntimeException e) {
+            if (!batchTransferService.appliesInTransaction()) {
+                log.error("Failed to apply {} queued transfers in engine: {}", batch.size(), e.getMessage());
+                batch.forEach(queued -> queued.result().complete(TransferStatus.FAILED));
+                return;
+            }
+            log.error("Failed to apply {} queued transfers, applying one by one: {}", batch.size(), e.getMessage());
+        }
+
+        for (Queued queued : batch) {
+            try {
+                queued.result().complete(batchTransferService.apply(List.of(queued.transfer())).get(0));
+            } catch (RuntimeException e) {
+                log.error("Failed to apply queued transfer {}: {}", queued.id(), e.getMessage());
+                queued.result().complete(TransferStatus.FAILED);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.serezka.server.money.engine;
+
+import com.serezka.server.money.database.model.EngineCheckpoint;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.EngineCheckpointRepository;
+import com.serezka.server.money.database.service.LedgerService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes durable log records to the {@code balances} and {@code ledger_entries} tables
+ * Every batch is applied together with the new checkpoint in one transaction, so a record is applied exactly once
+ * even if the application stops between writing and truncating the log
+ */
+@Log4j2
+class EngineWriter {
+    static final String CHECKPOINT = "wal";
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final BalanceRepository balanceRepository;
+    private final EngineCheckpointRepository checkpointRepository;
+    private final LedgerService ledgerService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final LongConsumer onCheckpoint;
+
+    private final BlockingQueue<WriteAheadLog.Entry> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread thread;
+
+    EngineWriter(BalanceRepository balanceRepository, EngineCheckpointRepository checkpointRepository,
+                 LedgerService ledgerService, TransactionTemplate transactionTemplate,
+                 int batchSize, LongConsumer onCheckpoint) {
+        this.balanceRepository = balanceRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.ledgerService = ledgerService;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.onCheckpoint = onCheckpoint;
+    }
+
+    /**
+     * @return log position up to which records are applied
+     */
+    long checkpoint() {
+        return checkpointRepository.findById(CHECKPOINT).map(EngineCheckpoint::getLsn).orElse(0L);
+    }
+
+    /**
+     * Apply records on the calling thread, used to replay the log before the engine starts
+     */
+    void applyAll(List<WriteAheadLog.Entry> entries) {
+        for (int start = 0; start < entries.size(); start += batchSize)
+            apply(entries.subList(start, Math.min(start + batchSize, entries.size())));
+    }
+
+    void enqueue(List<WriteAheadLog.Entry> entries) {
+        queue.addAll(entries);
+    }
+
+    void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("engine-writer").start(this::writeLoop);
+    }
+
+    /**
+     * Write everything queued so far and stop
+     * Records left unwritten stay in the log and are replayed on next start
+     */
+    void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<WriteAheadLog.Entry> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                WriteAheadLog.Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                while (!write(batch)) {
+                    if (!running) return;
+                    Thread.sleep(RETRY_DELAY_MS);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean write(List<WriteAheadLog.Entry> batch) {
+        try {
+            apply(batch);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} logged transfers, retrying: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void apply(List<WriteAheadLog.Entry> entries) {
+        if (entries.isEmpty()) return;
+        long lsn = entries.get(entries.size() - 1).lsn();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, Long> deltas = new HashMap<>();
+            List<Transfer> transfers = new ArrayList<>(entries.size());
+
+            for (WriteAheadLog.Entry entry : entries) {
+                WalRecord record = entry.record();
+                deltas.merge(record.fromId(), -record.amount(), Long::sum);
+
+                if (record.toId() == null) ledgerService.recordWithdrawal(record.fromId(), Money.ofMinor(record.amount()));
+                else {
+                    deltas.merge(record.toId(), record.amount(), Long::sum);
+                    transfers.add(new Transfer(record.transferId(), record.fromId(), record.toId(), Money.ofMinor(record.amount())));
+                }
+            }
+
+            balanceRepository.applyDeltas(deltas);
+            ledgerService.record(transfers);
+            checkpointRepository.save(new EngineCheckpoint(CHECKPOINT, lsn));
+        });
+
+        onCheckpoint.accept(lsn);
+    }
+}
@@ -0,0 +1,233 @@
+package com.serezka.server.money.engine;
+
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.EngineCheckpointRepository;
+import com.serezka.server.money.database.service.InsufficientFundsException;
+import com.serezka.server.money.database.service.LedgerService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Transfer engine keeping balances in memory
+ * <p>
+ * Balances are partitioned into shards by id and every shard is mutated by its own thread only, so funds are checked
+ * without locks. A transfer runs on the shard of the sender: it debits the sender, appends the transfer to the
+ * {@link WriteAheadLog} and, once the log is forced, credits the recipient on its shard and completes the caller.
+ * Durable records are written to the database in the background by {@link EngineWriter}.
+ * <p>
+ * On start all records after the database checkpoint are replayed into the database, after which
+ * the database is up to date and balances are loaded from it lazily on first use.
+ */
+@Log4j2
+public class MemoryTransferEngine implements TransferEngine, Closeable {
+    private static final Runnable STOP = () -> {
+    };
+
+    private final BalanceRepository balanceRepository;
+    private final WriteAheadLog wal;
+    private final EngineWriter writer;
+    private final Shard[] shards;
+    private final ConcurrentMap<Long, Account> accounts = new ConcurrentHashMap<>();
+
+    public MemoryTransferEngine(EngineProperties properties, BalanceRepository balanceRepository,
+                                EngineCheckpointRepository checkpointRepository, LedgerService ledgerService,
+                                TransactionTemplate transactionTemplate) {
+        this.balanceRepository = balanceRepository;
+        this.writer = new EngineWriter(balanceRepository, checkpointRepository, ledgerService, transactionTemplate,
+                properties.getWriterBatchSize(), this::truncate);
+        this.wal = new WriteAheadLog(properties.getWalDirectory(), (int) properties.getSegmentSize().toBytes(), writer::enqueue);
+
+        int count = properties.getShards() > 0 ? properties.getShards() : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) shards[i] = new Shard(i);
+    }
+
+    /**
+     * Replay log into the database and start shards
+     *
+     * @throws IOException if log can't be opened
+     */
+    public void start() throws IOException {
+        long checkpoint = writer.checkpoint();
+        List<WriteAheadLog.Entry> unapplied = wal.open(checkpoint);
+        if (!unapplied.isEmpty())
+            log.info("Replaying {} logged transfers after position {}", unapplied.size(), checkpoint);
+        writer.applyAll(unapplied);
+
+        writer.start();
+        for (Shard shard : shards) shard.thread.start();
+        log.info("Memory transfer engine started with {} shards", shards.length);
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(Long fromId, Long toId, Money amount) {
+        return submit(new WalRecord(UUID.randomUUID(), fromId, toId, amount.minor(), Instant.now()));
+    }
+
+    @Override
+    public CompletableFuture<Void> withdraw(Long fromId, Money amount) {
+        return submit(new WalRecord(UUID.randomUUID(), fromId, null, amount.minor(), Instant.now()));
+    }
+
+    @Override
+    public Optional<Money> balance(Long id) {
+        return Optional.ofNullable(account(id)).map(account -> Money.ofMinor(account.balance));
+    }
+
+    /**
+     * Stop shards, wait for the log to be forced and for the writer to catch up
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) shard.stop();
+        wal.close();
+        writer.close();
+    }
+
+    /**
+     * Load both balances on the calling thread and hand the transfer to the sender shard
+     * Shard threads never wait for the database, callers may hold every pooled connection
+     */
+    private CompletableFuture<Void> submit(WalRecord record) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Account from = account(record.fromId());
+        Account to = record.toId() == null ? null : account(record.toId());
+        if (from == null || (record.toId() != null && to == null)) {
+            result.completeExceptionally(new IllegalArgumentException("Balance not found"));
+            return result;
+        }
+
+        shard(record.fromId()).execute(() -> {
+            try {
+                debit(record, from, to, result);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private void truncate(long lsn) {
+        wal.truncate(lsn);
+    }
+
+    /**
+     * Runs on the shard of the sender
+     */
+    private void debit(WalRecord record, Account from, Account to, CompletableFuture<Void> result) {
+        if (from.balance < record.amount()) {
+            result.completeExceptionally(new InsufficientFundsException());
+            return;
+        }
+
+        from.balance -= record.amount();
+
+        CompletableFuture<Long> durable;
+        try {
+            durable = wal.append(record);
+        } catch (RuntimeException e) {
+            from.balance += record.amount();
+            result.completeExceptionally(e);
+            return;
+        }
+
+        durable.whenComplete((lsn, failure) -> {
+            if (failure != null) {
+                // nothing was acknowledged, give the money back
+                shard(record.fromId()).execute(() -> from.balance += record.amount());
+                result.completeExceptionally(failure);
+                return;
+            }
+
+            if (to != null) shard(record.toId()).execute(() -> to.balance += record.amount());
+            result.complete(null);
+        });
+    }
+
+    /**
+     * Get loaded balance or load it from the database
+     * A balance is always loaded before the first record touching it is logged,
+     * so the database can't be ahead of the loaded value
+     */
+    private Account account(Long id) {
+        Account account = accounts.get(id);
+        if (account != null) return account;
+
+        Optional<Long> total = balanceRepository.findTotalById(id);
+        if (total.isEmpty()) return null;
+
+        Account loaded = new Account(total.get());
+        account = accounts.putIfAbsent(id, loaded);
+        return account == null ? loaded : account;
+    }
+
+    private Shard shard(long id) {
+        return shards[(int) Math.floorMod(id, (long) shards.length)];
+    }
+
+    /**
+     * Balance in minor units, written by its shard thread only
+     */
+    private static final class Account {
+        volatile long balance;
+
+        Account(long balance) {
+            this.balance = balance;
+        }
+    }
+
+    private static final class Shard {
+        final BlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+        final Thread thread;
+
+        Shard(int index) {
+            thread = Thread.ofPlatform().name("engine-shard-" + index).unstarted(this::run);
+        }
+
+        void execute(Runnable command) {
+            commands.add(command);
+        }
+
+        void stop() {
+            commands.add(STOP);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void run() {
+            while (true) {
+                Runnable command;
+                try {
+                    command = commands.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (command == STOP) return;
+
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    log.error("Shard {} failed to run command", thread.getName(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.serezka.server.money.engine;
+
+import com.serezka.server.money.database.model.Money;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves money between balances outside of database transactions
+ * Returned futures complete once the operation is durable and fail with
+ * {@link com.serezka.server.money.database.service.InsufficientFundsException} or {@link IllegalArgumentException}
+ */
+public interface TransferEngine {
+    /**
+     * Withdraw money from one balance and add to another
+     *
+     * @param fromId id of balance to withdraw
+     * @param toId   id of balance to add
+     * @param amount amount of money, positive
+     * @return future completed when the transfer is durable
+     */
+    CompletableFuture<Void> transfer(Long fromId, Long toId, Money amount);
+
+    /**
+     * Withdraw money from balance
+     *
+     * @param fromId id of balance to withdraw
+     * @param amount amount of money, positive
+     * @return future completed when the withdrawal is durable
+     */
+    CompletableFuture<Void> withdraw(Long fromId, Money amount);
+
+    /**
+     * Current balance as seen by the engine, ahead of the database
+     *
+     * @param id balance id
+     * @return balance or empty if balance not exists
+     */
+    Optional<Money> balance(Long id);
+}
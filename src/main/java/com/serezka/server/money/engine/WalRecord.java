@@ -0,0 +1,42 @@
+package com.serezka.server.money.engine;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Transfer as stored in the write-ahead log
+ *
+ * @param transferId transfer id, shared by its ledger entries
+ * @param fromId     id of balance to withdraw
+ * @param toId       id of balance to add, null for withdrawal
+ * @param amount     amount of money in minor units
+ * @param created    when the transfer was accepted
+ */
+public record WalRecord(UUID transferId, long fromId, Long toId, long amount, Instant created) {
+    private static final long NO_ACCOUNT = 0;
+    private static final int SIZE = 8 * 6;
+
+    int size() {
+        return SIZE;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.putLong(transferId.getMostSignificantBits());
+        buffer.putLong(transferId.getLeastSignificantBits());
+        buffer.putLong(fromId);
+        buffer.putLong(toId == null ? NO_ACCOUNT : toId);
+        buffer.putLong(created.toEpochMilli());
+        buffer.putLong(amount);
+    }
+
+    static WalRecord readFrom(ByteBuffer buffer) {
+        UUID transferId = new UUID(buffer.getLong(), buffer.getLong());
+        long fromId = buffer.getLong();
+        long toId = buffer.getLong();
+        Instant created = Instant.ofEpochMilli(buffer.getLong());
+        long amount = buffer.getLong();
+
+        return new WalRecord(transferId, fromId, toId == NO_ACCOUNT ? null : toId, amount, created);
+    }
+}
@@ -0,0 +1,349 @@
+package com.serezka.server.money.engine;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of transfers kept in memory-mapped segment files
+ * <p>
+ * Every record is framed as {@code [length][crc32c][payload]} and addressed by its log sequence number,
+ * the global byte position right after it. Appends only copy bytes into the mapping, a single flusher thread
+ * forces everything appended so far to disk in one call and then completes all waiting appends together,
+ * so concurrent writers share one {@code msync}. Records are never split between segments.
+ */
+@Log4j2
+public class WriteAheadLog implements Closeable {
+    private static final int HEADER = 8;
+    private static final String SUFFIX = ".wal";
+
+    /**
+     * Durable record and its position
+     *
+     * @param lsn    position right after the record
+     * @param record logged transfer
+     */
+    public record Entry(long lsn, WalRecord record) {
+    }
+
+    private record Pending(Entry entry, CompletableFuture<Long> durable) {
+    }
+
+    private record Scan(int end, boolean clean) {
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Consumer<List<Entry>> listener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private Segment current;
+    private List<Segment> retired = new ArrayList<>();
+    private List<Pending> pending = new ArrayList<>();
+    private boolean open;
+    private Throwable failure;
+    private Thread flusher;
+    private volatile long truncated;
+
+    /**
+     * @param directory   directory of segment files
+     * @param segmentSize size of one segment file
+     * @param listener    receives durable records in log order, called on the flusher thread
+     */
+    public WriteAheadLog(Path directory, int segmentSize, Consumer<List<Entry>> listener) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Read records logged after position and prepare log for appending
+     * A torn or corrupted record ends the log, it and everything after it is discarded
+     *
+     * @param after position up to which records are already applied
+     * @return durable records after position, in log order
+     * @throws IOException if segment files can't be read or created
+     */
+    public List<Entry> open(long after) throws IOException {
+        Files.createDirectories(directory);
+        List<Entry> entries = new ArrayList<>();
+
+        Segment last = null;
+        boolean broken = false;
+        for (Path file : segments()) {
+            if (broken) {
+                log.warn("Discarding write-ahead log segment {} after corrupted record", file);
+                Files.delete(file);
+                continue;
+            }
+
+            if (last != null) last.close();
+            last = Segment.open(file, base(file), segmentSize);
+
+            Scan scan = scan(last, after, entries);
+            last.buffer.position(scan.end());
+            broken = !scan.clean();
+        }
+
+        if (last == null) last = Segment.open(file(0), 0, segmentSize);
+
+        // clear torn tail, so stale bytes are never read back as records
+        if (broken) {
+            ByteBuffer tail = last.buffer.duplicate();
+            while (tail.hasRemaining()) tail.put((byte) 0);
+            last.buffer.force();
+        }
+        last.forced = last.buffer.position();
+
+        lock.lock();
+        try {
+            current = last;
+            open = true;
+        } finally {
+            lock.unlock();
+        }
+
+        flusher = Thread.ofPlatform().name("engine-wal").start(this::flushLoop);
+        return entries;
+    }
+
+    /**
+     * Append record, it becomes durable with the next group commit
+     *
+     * @param record transfer to log
+     * @return future completed with record position once it's forced to disk
+     */
+    public CompletableFuture<Long> append(WalRecord record) {
+        CompletableFuture<Long> durable = new CompletableFuture<>();
+        int size = record.size();
+
+        lock.lock();
+        try {
+            if (!open) throw new IllegalStateException("Write-ahead log is closed");
+            if (failure != null) throw new IllegalStateException("Write-ahead log failed", failure);
+
+            if (current.buffer.remaining() < HEADER + size) roll();
+
+            MappedByteBuffer buffer = current.buffer;
+            int position = buffer.position();
+            record.writeTo(buffer.slice(position + HEADER, size));
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(position + HEADER, size));
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.putInt(position, size);
+            buffer.position(position + HEADER + size);
+
+            pending.add(new Pending(new Entry(current.base + buffer.position(), record), durable));
+            appended.signal();
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+
+        return durable;
+    }
+
+    /**
+     * Delete segments that hold only records before position
+     *
+     * @param lsn position up to which records are applied
+     */
+    public void truncate(long lsn) {
+        if (lsn - truncated < segmentSize) return;
+
+        long head;
+        lock.lock();
+        try {
+            head = current.base;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            for (Path file : segments()) {
+                long base = base(file);
+                if (base >= head || base + Files.size(file) > lsn) break;
+                Files.delete(file);
+            }
+            truncated = lsn;
+        } catch (IOException e) {
+            log.warn("Failed to delete applied write-ahead log segments: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop accepting records and wait until all appended records are forced
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (!open) return;
+            open = false;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        current.close();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<Pending> batch;
+            List<Segment> full;
+            Segment head;
+            int end;
+
+            lock.lock();
+            try {
+                while (pending.isEmpty() && open) appended.awaitUninterruptibly();
+                if (pending.isEmpty()) return;
+
+                batch = pending;
+                pending = new ArrayList<>();
+                full = retired;
+                retired = new ArrayList<>();
+                head = current;
+                end = head.buffer.position();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                // force only what was appended since the last commit
+                for (Segment segment : full) {
+                    segment.force(segment.end);
+                    segment.close();
+                }
+                head.force(end);
+            } catch (RuntimeException e) {
+                log.error("Failed to force write-ahead log, rejecting further transfers", e);
+                lock.lock();
+                try {
+                    failure = e;
+                } finally {
+                    lock.unlock();
+                }
+                batch.forEach(waiting -> waiting.durable().completeExceptionally(e));
+                continue;
+            }
+
+            List<Entry> entries = new ArrayList<>(batch.size());
+            for (Pending waiting : batch) {
+                entries.add(waiting.entry());
+                waiting.durable().complete(waiting.entry().lsn());
+            }
+            listener.accept(entries);
+        }
+    }
+
+    private void roll() throws IOException {
+        long base = current.base + current.buffer.capacity();
+        current.end = current.buffer.position();
+        retired.add(current);
+        current = Segment.open(file(base), base, segmentSize);
+    }
+
+    private Scan scan(Segment segment, long after, List<Entry> entries) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+
+        while (position + HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) return new Scan(position, true);
+            if (length < 0 || position + HEADER + length > buffer.capacity()) return new Scan(position, false);
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(position + HEADER, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) return new Scan(position, false);
+
+            long lsn = segment.base + position + HEADER + length;
+            if (lsn > after) entries.add(new Entry(lsn, WalRecord.readFrom(buffer.slice(position + HEADER, length))));
+            position += HEADER + length;
+        }
+
+        return new Scan(position, true);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path file(long base) {
+        return directory.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    private static long base(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        final long base;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        /**
+         * Position up to which the segment is forced, used by the flusher only
+         */
+        int forced;
+        /**
+         * Position the segment was filled up to when it was retired
+         */
+        int end;
+
+        private Segment(long base, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, long base, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = Math.max(channel.size(), size);
+            return new Segment(base, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+
+        void force(int end) {
+            if (end > forced) buffer.force(forced, end - forced);
+            forced = end;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close write-ahead log segment: {}", e.getMessage());
+            }
+        }
+    }
+}
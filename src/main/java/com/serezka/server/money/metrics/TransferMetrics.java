@@ -0,0 +1,145 @@
+package com.serezka.server.money.metrics;
+
+import com.serezka.server.money.database.service.InsufficientFundsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timers of every transfer phase and counters of failed transfers
+ * <p>
+ * Phases are exported as {@code money.transfer.phase{phase=...}}, rejections for lack of money as
+ * {@code money.transfer.rejected} and lost lock races as {@code money.transfer.conflicts{lock=optimistic|pessimistic}}.
+ * Optimistic mode adds {@code money.transfer.retries} and {@code money.transfer.fallbacks} to row locks.
+ * Histogram buckets and percentiles are configured under {@code management.metrics.distribution}.
+ */
+@Component
+public class TransferMetrics {
+    public enum Phase {
+        /**
+         * Resolving recipient by username
+         */
+        LOOKUP,
+        /**
+         * Loading balances of both parties
+         */
+        LOAD,
+        /**
+         * Waiting for row locks, pessimistic mode only
+         */
+        LOCK,
+        /**
+         * Changing balances, in guarded mode this includes waiting for the row lock held by the update
+         */
+        UPDATE,
+        /**
+         * Flushing pending writes and committing, or waiting for the log in memory mode
+         */
+        COMMIT
+    }
+
+    private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+    private final Counter insufficientFunds;
+    private final Counter optimisticConflicts;
+    private final Counter pessimisticConflicts;
+    private final Counter retries;
+    private final Counter fallbacks;
+
+    public TransferMetrics(MeterRegistry meterRegistry) {
+        for (Phase phase : Phase.values())
+            phases.put(phase, Timer.builder("money.transfer.phase")
+                    .description("Time spent in one phase of a transfer")
+                    .tag("phase", phase.name().toLowerCase())
+                    .register(meterRegistry));
+
+        insufficientFunds = Counter.builder("money.transfer.rejected")
+                .description("Transfers rejected for lack of money")
+                .tag("reason", "insufficient_funds")
+                .register(meterRegistry);
+        optimisticConflicts = Counter.builder("money.transfer.conflicts")
+                .description("Attempts failed on a concurrent change of a versioned balance")
+                .tag("lock", "optimistic")
+                .register(meterRegistry);
+        pessimisticConflicts = Counter.builder("money.transfer.conflicts")
+                .description("Transfers failed on a deadlock or lock timeout")
+                .tag("lock", "pessimistic")
+                .register(meterRegistry);
+        retries = Counter.builder("money.transfer.retries")
+                .description("Transfers attempted again after a version conflict")
+                .register(meterRegistry);
+        fallbacks = Counter.builder("money.transfer.fallbacks")
+                .description("Optimistic transfers run with row locks")
+                .register(meterRegistry);
+    }
+
+    public <T> T record(Phase phase, Supplier<T> action) {
+        return phases.get(phase).record(action);
+    }
+
+    public void record(Phase phase, Runnable action) {
+        phases.get(phase).record(action);
+    }
+
+    /**
+     * Time commit of the current transaction, from the first before-commit callback until it completes
+     * Does nothing outside of a transaction, rolled back transactions are not recorded
+     */
+    public void recordCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long started;
+
+            @Override
+            public int getOrder() {
+                return HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                started = System.nanoTime();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED && started != 0)
+                    phases.get(Phase.COMMIT).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    public void retry() {
+        retries.increment();
+    }
+
+    public void fallback() {
+        fallbacks.increment();
+    }
+
+    /**
+     * Count transfer failure by its cause, failures of other kinds are ignored
+     *
+     * @param failure exception thrown by the transfer
+     */
+    public void failed(RuntimeException failure) {
+        if (failure instanceof InsufficientFundsException) insufficientFunds.increment();
+        else if (failure instanceof OptimisticLockingFailureException || failure instanceof OptimisticLockException)
+            optimisticConflicts.increment();
+        else if (failure instanceof PessimisticLockingFailureException || failure instanceof PessimisticLockException
+                || failure instanceof LockTimeoutException)
+            pessimisticConflicts.increment();
+    }
+}
@@ -0,0 +1,22 @@
+-- Amounts become BIGINT counts of minor units (cents), Hibernate created them as NUMERIC(38, 2)
+-- Columns that are not NUMERIC are left alone, so the script is safe on schemas created after the change
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'balances'
+                 AND column_name = 'balance' AND data_type = 'numeric') THEN
+        ALTER TABLE balances ALTER COLUMN balance TYPE BIGINT USING round(balance * 100)::BIGINT;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'balance_stripes'
+                 AND column_name = 'amount' AND data_type = 'numeric') THEN
+        ALTER TABLE balance_stripes ALTER COLUMN amount TYPE BIGINT USING round(amount * 100)::BIGINT;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'ledger_entries'
+                 AND column_name = 'amount' AND data_type = 'numeric') THEN
+        ALTER TABLE ledger_entries ALTER COLUMN amount TYPE BIGINT USING round(amount * 100)::BIGINT;
+    END IF;
+END $$;
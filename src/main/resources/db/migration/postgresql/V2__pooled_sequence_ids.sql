@@ -0,0 +1,19 @@
+-- Ids of users and balances come from sequences handed out in blocks of 50 (pooled-lo) instead of identity columns
+-- Sequences continue after the largest existing id, so existing ids are kept
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS balances_seq START WITH 1 INCREMENT BY 50;
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.tables
+               WHERE table_schema = current_schema() AND table_name = 'users') THEN
+        ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+        PERFORM setval('users_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM users), false);
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM information_schema.tables
+               WHERE table_schema = current_schema() AND table_name = 'balances') THEN
+        ALTER TABLE balances ALTER COLUMN id DROP IDENTITY IF EXISTS;
+        PERFORM setval('balances_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM balances), false);
+    END IF;
+END $$;
@@ -0,0 +1,10 @@
+-- Idempotency keys store hex SHA-256 of the request instead of the request itself, which may not fit the column
+-- Stored fingerprints are hashed in place, so keys used before keep matching their repeats
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.tables
+               WHERE table_schema = current_schema() AND table_name = 'idempotency_keys') THEN
+        UPDATE idempotency_keys SET fingerprint = encode(sha256(convert_to(fingerprint, 'UTF8')), 'hex');
+        ALTER TABLE idempotency_keys ALTER COLUMN fingerprint TYPE VARCHAR(64);
+    END IF;
+END $$;
@@ -0,0 +1,33 @@
+package com.serezka.server;
+
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import org.springframework.boot.test.context.TestComponent;
+
+/**
+ * Saves users and balances for database tests, import it next to the tested services
+ */
+@TestComponent
+public class TestAccounts {
+    private final UserRepository userRepository;
+    private final BalanceRepository balanceRepository;
+
+    public TestAccounts(UserRepository userRepository, BalanceRepository balanceRepository) {
+        this.userRepository = userRepository;
+        this.balanceRepository = balanceRepository;
+    }
+
+    public User createUser(String username) {
+        return userRepository.save(User.builder()
+                .username(username)
+                .password("password")
+                .mail(username + "@bank.test")
+                .build());
+    }
+
+    public Balance createBalance(String username) {
+        return balanceRepository.save(Balance.builder().user(createUser(username)).build());
+    }
+}
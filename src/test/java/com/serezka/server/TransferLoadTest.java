@@ -0,0 +1,315 @@
+package com.serezka.server;
+
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.authorization.service.JwtService;
+import com.serezka.server.localization.Localization;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.service.BalanceService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives a mix of registrations, balance reads and transfers over HTTP against the whole application
+ * and checks that money is neither created nor lost
+ * <p>
+ * Tagged {@code load}, so it only runs with {@code gradle loadTest}. Tune it with
+ * {@code -Pload.accounts}, {@code -Pload.threads}, {@code -Pload.operations},
+ * {@code -Pload.mix=register:1,read:39,transfer:60} and {@code -Pload.mode=guarded|pessimistic|memory}
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.jpa.show-sql=false")
+@ActiveProfiles("test")
+class TransferLoadTest {
+    private static final Logger log = LogManager.getLogger(TransferLoadTest.class);
+
+    private static final int ACCOUNTS = Integer.getInteger("load.accounts", 2000);
+    private static final int THREADS = Integer.getInteger("load.threads", 64);
+    private static final int OPERATIONS = Integer.getInteger("load.operations", 20_000);
+    private static final String MIX = System.getProperty("load.mix", "register:1,read:39,transfer:60");
+    private static final Money INITIAL_BALANCE = Money.parse("1000");
+    private static final Pattern TRANSFER_ID = Pattern.compile("\"id\":\"([0-9a-f-]+)\"");
+
+    enum Operation {REGISTER, READ, TRANSFER, SUBMIT}
+
+    @DynamicPropertySource
+    static void mode(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("money.transfer.mode", () -> System.getProperty("load.mode", "guarded"));
+        registry.add("money.engine.wal-directory", Files.createTempDirectory("wal")::toString);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> rejected = new EnumMap<>(Operation.class);
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+    private AtomicReferenceArray<String> usernames;
+    private AtomicReferenceArray<String> tokens;
+    private final AtomicInteger accounts = new AtomicInteger();
+
+    @Test
+    void testTransfers_KeepTotalAndNeverGoNegative() throws InterruptedException {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3));
+            rejected.put(operation, new AtomicLong());
+        }
+        seed();
+
+        Operation[] mix = mix();
+        AtomicInteger remaining = new AtomicInteger(OPERATIONS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < THREADS; i++)
+            executor.execute(() -> {
+                while (remaining.getAndDecrement() > 0)
+                    run(mix[ThreadLocalRandom.current().nextInt(mix.length)]);
+            });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.MINUTES), "Load run did not finish in time");
+        long elapsed = System.nanoTime() - started;
+
+        report(elapsed);
+        assertTrue(failures.isEmpty(), () -> failures.size() + " unexpected responses, first: " + failures.peek());
+
+        List<Balance> balances = balanceRepository.findAll();
+        Money total = Money.ZERO;
+        for (Balance balance : balances) {
+            Money amount = balanceService.total(balance);
+            assertFalse(amount.isLessThan(Money.ZERO), () -> "Balance " + balance.getId() + " is negative: " + amount);
+            total = total.plus(amount);
+        }
+
+        assertEquals(accounts.get(), balances.size());
+        assertEquals(Money.ofMinor(INITIAL_BALANCE.minor() * balances.size()), total,
+                "Total of all balances must be unchanged, was " + total);
+    }
+
+    private void run(Operation operation) {
+        long started = System.nanoTime();
+        try {
+            boolean accepted = switch (operation) {
+                case REGISTER -> register();
+                case READ -> read();
+                case TRANSFER -> transfer();
+                case SUBMIT -> submit();
+            };
+            if (!accepted) rejected.get(operation).incrementAndGet();
+        } catch (IOException | InterruptedException e) {
+            failures.add(operation + ": " + e);
+        } finally {
+            latencies.get(operation).recordValue(System.nanoTime() - started);
+        }
+    }
+
+    private boolean register() throws IOException, InterruptedException {
+        String username = "load" + System.nanoTime() + ThreadLocalRandom.current().nextInt(1000);
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/signup"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"login\":\"" + username + "\",\"password\":\"password\",\"mail\":\"" + username + "@bank.test\"}")));
+
+        if (response.statusCode() != 200 || response.body().contains("\"error\":true")) {
+            failures.add("register: " + response.statusCode() + " " + response.body());
+            return false;
+        }
+
+        User user = userRepository.findByUsername(username).orElseThrow();
+        publish(username, jwtService.generateToken(user));
+        return true;
+    }
+
+    private boolean read() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/money"))
+                .header("Authorization", "Bearer " + tokens.get(randomAccount()))
+                .GET());
+
+        if (response.statusCode() != 200) failures.add("read: " + response.statusCode() + " " + response.body());
+        return response.statusCode() == 200;
+    }
+
+    private boolean transfer() throws IOException, InterruptedException {
+        int from = randomAccount();
+        int to = randomAccount();
+        while (to == from) to = randomAccount();
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/money"))
+                .header("Authorization", "Bearer " + tokens.get(from))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"to\":\"" + usernames.get(to) + "\",\"amount\":" + Money.format(ThreadLocalRandom.current().nextInt(1, 5001)) + "}")));
+
+        if (response.statusCode() == 200) return true;
+        // running out of money is an expected outcome, everything else is a bug
+        if (!response.body().equals(Localization.getInstance().get("money.insufficient-funds", Localization.Type.US))) failures.add("transfer: " + response.statusCode() + " " + response.body());
+        return false;
+    }
+
+    /**
+     * Queue transfer and long-poll its outcome
+     */
+    private boolean submit() throws IOException, InterruptedException {
+        int from = randomAccount();
+        int to = randomAccount();
+        while (to == from) to = randomAccount();
+        String token = tokens.get(from);
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/money/transfers"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"to\":\"" + usernames.get(to) + "\",\"amount\":" + Money.format(ThreadLocalRandom.current().nextInt(1, 5001)) + "}")));
+
+        // full queue is backpressure, not a failure
+        if (response.statusCode() == 503) return false;
+        Matcher id = TRANSFER_ID.matcher(response.body());
+        if (response.statusCode() != 202 || !id.find()) {
+            failures.add("submit: " + response.statusCode() + " " + response.body());
+            return false;
+        }
+
+        String status;
+        do {
+            response = send(HttpRequest.newBuilder(uri("/money/transfers/" + id.group(1) + "?wait=30"))
+                    .header("Authorization", "Bearer " + token)
+                    .GET());
+            if (response.statusCode() != 200) {
+                failures.add("poll: " + response.statusCode() + " " + response.body());
+                return false;
+            }
+            status = response.body();
+        } while (status.contains("\"PENDING\""));
+
+        if (status.contains("\"OK\"")) return true;
+        if (!status.contains("\"INSUFFICIENT_FUNDS\"")) failures.add("submit: " + status);
+        return false;
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.timeout(Duration.ofSeconds(60)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Create accounts directly, hashing the password once, since BCrypt would dominate the setup
+     */
+    private void seed() {
+        usernames = new AtomicReferenceArray<>(ACCOUNTS + OPERATIONS);
+        tokens = new AtomicReferenceArray<>(ACCOUNTS + OPERATIONS);
+        String password = passwordEncoder.encode("password");
+
+        List<User> users = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++)
+            users.add(User.builder().username("seed" + i).password(password).mail("seed" + i + "@bank.test").build());
+        users = userRepository.saveAll(users);
+
+        List<Balance> balances = new ArrayList<>(ACCOUNTS);
+        for (User user : users) {
+            balances.add(Balance.builder().user(user).balance(INITIAL_BALANCE).build());
+            publish(user.getUsername(), jwtService.generateToken(user));
+        }
+        balanceRepository.saveAll(balances);
+    }
+
+    private synchronized void publish(String username, String token) {
+        int index = accounts.get();
+        usernames.set(index, username);
+        tokens.set(index, token);
+        accounts.set(index + 1);
+    }
+
+    private int randomAccount() {
+        return ThreadLocalRandom.current().nextInt(accounts.get());
+    }
+
+    private Operation[] mix() {
+        List<Operation> weighted = new ArrayList<>();
+        for (String part : MIX.split(",")) {
+            String[] weight = part.split(":");
+            Operation operation = Operation.valueOf(weight[0].trim().toUpperCase());
+            for (int i = 0; i < Integer.parseInt(weight[1].trim()); i++) weighted.add(operation);
+        }
+        return weighted.toArray(Operation[]::new);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private void report(long elapsed) {
+        StringBuilder report = new StringBuilder(String.format("%nLoad run: %d operations, %d threads, %d accounts at start, %.1f s%n",
+                OPERATIONS, THREADS, ACCOUNTS, elapsed / 1e9));
+        report.append(String.format("%-10s %8s %9s %10s %10s %10s %10s%n", "operation", "count", "rejected", "ops/s", "p50 ms", "p99 ms", "p999 ms"));
+
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            report.append(String.format("%-10s %8d %9d %10.1f %10.2f %10.2f %10.2f%n",
+                    operation.name().toLowerCase(), histogram.getTotalCount(), rejected.get(operation).get(),
+                    histogram.getTotalCount() / (elapsed / 1e9),
+                    histogram.getValueAtPercentile(50) / 1e6,
+                    histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getValueAtPercentile(99.9) / 1e6));
+        }
+
+        log.info(report);
+    }
+}
@@ -0,0 +1,90 @@
+package com.serezka.server.authorization.database.service;
+
+import com.serezka.server.authorization.config.PrincipalCacheProperties;
+import com.serezka.server.authorization.config.SignupFilterProperties;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserIdentity;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.authorization.database.repository.UserSummary;
+import com.serezka.server.authorization.service.PrincipalCache;
+import com.serezka.server.authorization.service.SignupFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({UserService.class, PrincipalCache.class, SignupFilter.class, SimpleMeterRegistry.class})
+@EnableConfigurationProperties({PrincipalCacheProperties.class, SignupFilterProperties.class})
+class UserServiceTest {
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SignupFilter signupFilter;
+
+    @BeforeEach
+    void setUp() {
+        for (String username : List.of("alice", "Malik", "salim", "bob", "ali_baba", "alixbaba"))
+            userRepository.save(User.builder()
+                    .username(username)
+                    .password("password")
+                    .mail(username + "@bank.test")
+                    .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testSearchByUsername_IgnoresCaseAndPages() {
+        List<UserSummary> first = userService.searchByUsername("ALI", null, 3);
+        assertEquals(List.of("Malik", "ali_baba", "alice"), usernames(first));
+
+        List<UserSummary> second = userService.searchByUsername("ALI", first.get(2).getUsername(), 3);
+        assertEquals(List.of("alixbaba", "salim"), usernames(second));
+
+        assertTrue(userService.searchByUsername("ALI", "salim", 3).isEmpty());
+    }
+
+    @Test
+    void testSearchByUsername_MatchesWildcardsLiterally() {
+        assertEquals(List.of("ali_baba"), usernames(userService.searchByUsername("i_b", null, 10)));
+        assertTrue(userService.searchByUsername("a%b", null, 10).isEmpty());
+    }
+
+    @Test
+    void testFindTaken_ChecksOnlyNamesFilterMayHave() {
+        signupFilter.load();
+        userService.save(User.builder().username("carol").password("password").mail("carol@bank.test").build());
+
+        assertTrue(userService.findTaken("nobody", "nobody@bank.test").isEmpty());
+        assertEquals(List.of("carol"), userService.findTaken("carol", "nobody@bank.test").stream().map(UserIdentity::getUsername).toList());
+        assertEquals(List.of("alice"), userService.findTaken("nobody", "alice@bank.test").stream().map(UserIdentity::getUsername).toList());
+        assertEquals(2, userService.findTaken("bob", "alice@bank.test").size());
+    }
+
+    private static List<String> usernames(List<UserSummary> users) {
+        return users.stream().map(UserSummary::getUsername).toList();
+    }
+}
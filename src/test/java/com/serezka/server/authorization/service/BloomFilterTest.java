@@ -0,0 +1,34 @@
+package com.serezka.server.authorization.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+    private static final int VALUES = 10_000;
+
+    @Test
+    void testMightContain_NoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(VALUES, 0.01);
+        for (int i = 0; i < VALUES; i++) filter.put("user" + i);
+
+        for (int i = 0; i < VALUES; i++) assertTrue(filter.mightContain("user" + i), "user" + i);
+    }
+
+    @Test
+    void testMightContain_FalsePositivesNearRate() {
+        BloomFilter filter = new BloomFilter(VALUES, 0.01);
+        for (int i = 0; i < VALUES; i++) filter.put("user" + i);
+
+        int positives = 0;
+        for (int i = 0; i < VALUES; i++) if (filter.mightContain("other" + i)) positives++;
+        assertTrue(positives < VALUES * 0.02, "Too many false positives: " + positives);
+    }
+
+    @Test
+    void testConstructor_RejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(VALUES, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(VALUES, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+    }
+}
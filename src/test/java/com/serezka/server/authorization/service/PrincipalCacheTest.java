@@ -0,0 +1,70 @@
+package com.serezka.server.authorization.service;
+
+import com.serezka.server.authorization.config.PrincipalCacheProperties;
+import com.serezka.server.authorization.database.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrincipalCacheTest {
+    private SimpleMeterRegistry meterRegistry;
+    private PrincipalCache principalCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        principalCache = new PrincipalCache(new PrincipalCacheProperties(), meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void testGet_LoadsOnce() {
+        User first = principalCache.get("testUser", this::load).orElseThrow();
+        User second = principalCache.get("testUser", this::load).orElseThrow();
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "principals").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "principals").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testGet_MissingUserIsNotCached() {
+        assertTrue(principalCache.get("nobody", username -> Optional.empty()).isEmpty());
+        assertTrue(principalCache.get("nobody", this::load).isPresent());
+    }
+
+    @Test
+    void testEvict_ByIdAfterRename() {
+        User cached = principalCache.get("testUser", this::load).orElseThrow();
+
+        User renamed = User.builder().id(cached.getId()).username("renamedUser").build();
+        principalCache.evict(renamed);
+
+        principalCache.get("testUser", this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testEvict_RenamedTwice() {
+        principalCache.get("testUser", this::load);
+        principalCache.evict(User.builder().id(1L).username("renamedUser").build());
+
+        principalCache.get("renamedUser", this::load);
+        principalCache.evict(User.builder().id(1L).username("finalUser").build());
+
+        principalCache.get("renamedUser", this::load);
+        assertEquals(3, loads.get());
+    }
+
+    private Optional<User> load(String username) {
+        loads.incrementAndGet();
+        return Optional.of(User.builder().id(1L).username(username).build());
+    }
+}
@@ -0,0 +1,90 @@
+package com.serezka.server.authorization.service;
+
+import com.serezka.server.authorization.config.TokenProperties;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.RefreshTokenRepository;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(RefreshTokenService.class)
+@EnableConfigurationProperties(TokenProperties.class)
+class RefreshTokenServiceTest {
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(User.builder()
+                .username("alice")
+                .password("password")
+                .mail("alice@bank.test")
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        refreshTokenRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testRotate_IssuesNextToken() {
+        String first = refreshTokenService.issue(user);
+
+        RefreshTokenService.Rotated rotated = refreshTokenService.rotate(first).orElseThrow();
+        assertEquals("alice", rotated.user().getUsername());
+        assertNotEquals(first, rotated.token());
+
+        assertTrue(refreshTokenService.rotate(rotated.token()).isPresent());
+        assertTrue(refreshTokenService.rotate("unknown").isEmpty());
+    }
+
+    @Test
+    void testRotate_ReusedTokenRevokesFamily() {
+        String first = refreshTokenService.issue(user);
+        String other = refreshTokenService.issue(user);
+        String second = refreshTokenService.rotate(first).orElseThrow().token();
+
+        assertTrue(refreshTokenService.rotate(first).isEmpty(), "Used token must be rejected");
+        assertTrue(refreshTokenService.rotate(second).isEmpty(), "Tokens of the family must be revoked");
+        assertTrue(refreshTokenService.rotate(other).isPresent(), "Other sign-ins must stay valid");
+    }
+
+    @Test
+    void testRotate_ExpiredToken() {
+        String token = refreshTokenService.issue(user);
+        refreshTokenRepository.findAll().forEach(stored -> {
+            stored.setExpires(Instant.now().minusSeconds(1));
+            refreshTokenRepository.save(stored);
+        });
+
+        assertTrue(refreshTokenService.rotate(token).isEmpty());
+        assertEquals(0, refreshTokenRepository.count());
+    }
+}
@@ -0,0 +1,123 @@
+package com.serezka.server.authorization.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serezka.server.authorization.config.ImportProperties;
+import com.serezka.server.authorization.config.PrincipalCacheProperties;
+import com.serezka.server.authorization.config.SignupFilterProperties;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.authorization.database.service.UserService;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.service.BalanceCache;
+import com.serezka.server.money.database.service.BalanceService;
+import com.serezka.server.money.database.service.LedgerService;
+import com.serezka.server.money.database.service.OptimisticTransferService;
+import com.serezka.server.money.database.service.StripedBalanceService;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "authorization.import.chunk-size=2",
+        "authorization.import.hash-threads=2"
+})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({UserImportService.class, UserService.class, PrincipalCache.class, SignupFilter.class, BalanceService.class,
+        LedgerService.class, StripedBalanceService.class, OptimisticTransferService.class, BalanceCache.class,
+        TransferMetrics.class, SimpleMeterRegistry.class, BCryptPasswordEncoder.class, ObjectMapper.class})
+@EnableConfigurationProperties({ImportProperties.class, PrincipalCacheProperties.class, SignupFilterProperties.class,
+        TransferProperties.class, EngineProperties.class, BalanceCacheProperties.class})
+class UserImportServiceTest {
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @AfterEach
+    void tearDown() {
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testImportUsers_CreatesUsersWithBalances() {
+        List<List<UserImportService.Result>> chunks = new ArrayList<>();
+        long created = userImportService.importUsers(new StringReader(
+                record("alice") + "\n" + record("bob") + "\n\n" + record("carol") + "\n"), chunks::add);
+
+        assertEquals(3, created);
+        assertEquals(2, chunks.size(), "Results must be reported per chunk");
+        assertEquals(List.of(1L, 2L), chunks.get(0).stream().map(UserImportService.Result::line).toList());
+        assertEquals(4L, chunks.get(1).getFirst().line());
+        assertTrue(chunks.stream().flatMap(List::stream).allMatch(result -> result.status() == UserImportService.Status.CREATED));
+
+        User alice = userRepository.findByUsername("alice").orElseThrow();
+        assertTrue(passwordEncoder.matches("secret-alice", alice.getPassword()));
+        assertEquals(Money.parse("1000"), balanceRepository.findByUser(alice).orElseThrow().getBalance());
+        assertEquals(3, balanceRepository.count());
+    }
+
+    @Test
+    void testImportUsers_ReportsRejectedRecords() {
+        userService.save(User.builder().username("taken").password("password").mail("taken@bank.test").build());
+
+        List<UserImportService.Result> results = new ArrayList<>();
+        long created = userImportService.importUsers(new StringReader(String.join("\n",
+                record("taken"),
+                "{\"login\":\"other\",\"password\":\"secret\",\"mail\":\"taken@bank.test\"}",
+                record("dave"),
+                record("dave"),
+                "{\"login\":\"eve\"}",
+                "not json")), results::addAll);
+
+        assertEquals(1, created);
+        assertEquals(List.of(
+                        UserImportService.Status.DUPLICATE,
+                        UserImportService.Status.DUPLICATE,
+                        UserImportService.Status.CREATED,
+                        UserImportService.Status.DUPLICATE,
+                        UserImportService.Status.INVALID,
+                        UserImportService.Status.INVALID),
+                results.stream().map(UserImportService.Result::status).toList());
+        assertEquals("user with this mail already registered", results.get(1).message());
+        assertNull(results.get(5).login());
+        assertEquals(2, userRepository.count());
+    }
+
+    private static String record(String login) {
+        return "{\"login\":\"" + login + "\",\"password\":\"secret-" + login + "\",\"mail\":\"" + login + "@bank.test\"}";
+    }
+}
@@ -0,0 +1,100 @@
+package com.serezka.server.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routing between two separate in-memory databases, each of them knows its own name
+ */
+class ReplicaRoutingDataSourceTest {
+    private ReplicaStickiness stickiness;
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        ReplicaProperties properties = new ReplicaProperties();
+        properties.setMaxLag(Duration.ofSeconds(2));
+        stickiness = new ReplicaStickiness(properties);
+
+        routing = new ReplicaRoutingDataSource(database("primary"), database("replica"), properties, stickiness);
+        routing.afterPropertiesSet();
+        routing.updateLag(Duration.ZERO);
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaWhileItKeepsUp() {
+        assertEquals("replica", node(true, null));
+        assertEquals("primary", node(false, null));
+        assertEquals("primary", jdbcTemplate.queryForObject("SELECT name FROM node", String.class));
+
+        routing.updateLag(Duration.ofSeconds(5));
+        assertEquals("primary", node(true, null));
+
+        routing.updateLag(null);
+        assertEquals("primary", node(true, null));
+
+        routing.updateLag(Duration.ofMillis(500));
+        assertEquals("replica", node(true, null));
+    }
+
+    @Test
+    void usersWhoWroteRecentlyReadFromPrimary() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alice", null, AuthorityUtils.NO_AUTHORITIES));
+        assertEquals("replica", node(true, null));
+
+        stickiness.stickCurrentUser();
+        assertEquals("primary", node(true, null));
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("bob", null, AuthorityUtils.NO_AUTHORITIES));
+        assertEquals("replica", node(true, null));
+    }
+
+    @Test
+    void defaultRepositoryTransactionsStayOnPrimary() {
+        assertEquals("primary", node(true, "org.springframework.data.jpa.repository.support.SimpleJpaRepository.findById"));
+        assertEquals("replica", node(true, "com.serezka.server.money.database.service.LedgerService.history"));
+    }
+
+    private String node(boolean readOnly, String transactionName) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        transaction.setName(transactionName);
+        return transaction.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(16))");
+        jdbcTemplate.execute("DELETE FROM node");
+        jdbcTemplate.update("INSERT INTO node VALUES (?)", name);
+        return dataSource;
+    }
+}
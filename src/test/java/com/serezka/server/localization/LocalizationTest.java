@@ -0,0 +1,27 @@
+package com.serezka.server.localization;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalizationTest {
+    private final Localization localization = Localization.getInstance();
+
+    @Test
+    void testGet_MessageOfEveryType() {
+        assertEquals("Money transferred successfully", localization.get("money.transferred", Localization.Type.US));
+        assertEquals("Деньги успешно переведены", localization.get("money.transferred", Localization.Type.RU));
+        assertEquals(localization.get("money.transferred", Localization.Type.DEFAULT), localization.get("money.transferred"));
+    }
+
+    @Test
+    void testGet_MissingCodeResolvesToItself() {
+        assertEquals("no.such.code", localization.get("no.such.code", Localization.Type.US));
+        assertEquals("no.such.code", localization.get("no.such.code", Localization.Type.US));
+    }
+
+    @Test
+    void testGet_NullTypeUsesDefault() {
+        assertEquals(localization.get("money.transferred"), localization.get("money.transferred", (Localization.Type) null));
+    }
+}
@@ -1,15 +1,21 @@
 package com.serezka.server.money.controller;
 
 import com.serezka.server.authorization.database.model.User;
-import com.serezka.server.authorization.database.service.UserService;
+import com.serezka.server.localization.Localization;
 import com.serezka.server.money.controller.dto.TransferDto;
-import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.AccountState;
+import com.serezka.server.money.database.repository.TransferParties;
 import com.serezka.server.money.database.service.BalanceService;
+import com.serezka.server.money.database.service.InsufficientFundsException;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -17,7 +23,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 
-import java.math.BigDecimal;
 import java.util.Optional;
 
 import static org.mockito.Mockito.*;
@@ -27,8 +32,11 @@ class BalanceControllerTest {
     @Mock
     private BalanceService balanceService;
 
-    @Mock
-    private UserService userService;
+    @Spy
+    private TransferMetrics transferMetrics = new TransferMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private Localization localization = Localization.getInstance();
 
     @InjectMocks
     private BalanceController balanceController;
@@ -52,69 +60,103 @@ class BalanceControllerTest {
 
     @Test
     void testGetBalance_BalanceNotFound() {
-        when(balanceService.findByUser(user)).thenReturn(Optional.empty());
+        when(balanceService.balance(user)).thenReturn(Optional.empty());
 
-        ResponseEntity<Double> response = balanceController.getBalance(user);
+        ResponseEntity<Money> response = balanceController.getBalance(user);
 
         assertEquals(HttpStatusCode.valueOf(400), response.getStatusCode());
-        assertEquals(0D, response.getBody());
+        assertEquals(Money.ZERO, response.getBody());
     }
 
     @Test
     void testGetBalance_BalanceFound() {
-        Balance balance = new Balance();
-        balance.setBalance(BigDecimal.valueOf(1500.0));
-        when(balanceService.findByUser(user)).thenReturn(Optional.of(balance));
+        when(balanceService.balance(user)).thenReturn(Optional.of(Money.parse("1500")));
 
-        ResponseEntity<Double> response = balanceController.getBalance(user);
+        ResponseEntity<Money> response = balanceController.getBalance(user);
 
         assertEquals(HttpStatusCode.valueOf(200), response.getStatusCode());
-        assertEquals(1500.0, response.getBody());
+        assertEquals(Money.parse("1500"), response.getBody());
     }
 
     @Test
     void testAddMoney_UserNotFound() {
-        TransferDto transfer = new TransferDto("otherUser", 200);
-        when(userService.findByUsername("otherUser")).thenReturn(Optional.empty());
+        TransferDto transfer = new TransferDto("otherUser", Money.parse("200"));
+        when(balanceService.resolveTransfer(user, "otherUser")).thenReturn(Optional.of(new TransferParties(null, account(1L), null)));
 
-        ResponseEntity<String> response = balanceController.addMoney(user, transfer);
+        ResponseEntity<String> response = balanceController.addMoney(user, transfer, null);
 
         assertEquals(400, response.getStatusCodeValue());
         assertTrue(response.getBody().contains("not exists"));
     }
 
+    @Test
+    void testAddMoney_RecipientHasNoBalance() {
+        TransferDto transfer = new TransferDto("otherUser", Money.parse("200"));
+        when(balanceService.resolveTransfer(user, "otherUser")).thenReturn(Optional.of(new TransferParties(2L, account(1L), null)));
+
+        ResponseEntity<String> response = balanceController.addMoney(user, transfer, null);
+
+        assertEquals(400, response.getStatusCodeValue());
+        assertEquals("Balance not found for user 2", response.getBody());
+        verify(balanceService, never()).withdraw(any(AccountState.class), any(AccountState.class), any(Money.class));
+    }
+
     @Test
     void testAddMoney_TransferMoney() {
-        User toUser = new User();
-        toUser.setId(2L);
-        toUser.setUsername("otherUser");
 
-        TransferDto transfer = new TransferDto("otherUser", 200);
-        when(userService.findByUsername("otherUser")).thenReturn(Optional.of(toUser));
-        when(balanceService.findByUser(user)).thenReturn(Optional.of(new Balance()));
-        when(balanceService.findByUser(toUser)).thenReturn(Optional.of(new Balance()));
+        TransferDto transfer = new TransferDto("otherUser", Money.parse("200"));
+        when(balanceService.resolveTransfer(user, "otherUser")).thenReturn(Optional.of(new TransferParties(2L, account(1L), account(2L))));
 
-        ResponseEntity<String> response = balanceController.addMoney(user, transfer);
+        ResponseEntity<String> response = balanceController.addMoney(user, transfer, null);
 
         assertEquals(200, response.getStatusCodeValue());
         assertTrue(response.getBody().contains("successfully"));
+        verify(balanceService).withdraw(account(1L), account(2L), Money.parse("200"));
     }
 
     @Test
     void testAddMoney_FailureInTransfer() {
-        User toUser = new User();
-        toUser.setId(2L);
-        toUser.setUsername("otherUser");
 
-        TransferDto transfer = new TransferDto("otherUser", 200);
-        when(userService.findByUsername("otherUser")).thenReturn(Optional.of(toUser));
-        when(balanceService.findByUser(user)).thenReturn(Optional.of(new Balance()));
-        when(balanceService.findByUser(toUser)).thenReturn(Optional.of(new Balance()));
-        doThrow(new RuntimeException("Insufficient funds")).when(balanceService).withdraw(any(Balance.class), any(Balance.class), any(BigDecimal.class));
+        TransferDto transfer = new TransferDto("otherUser", Money.parse("200"));
+        when(balanceService.resolveTransfer(user, "otherUser")).thenReturn(Optional.of(new TransferParties(2L, account(1L), account(2L))));
+        doThrow(new IllegalArgumentException("Insufficient funds")).when(balanceService).withdraw(any(AccountState.class), any(AccountState.class), any(Money.class));
 
-        ResponseEntity<String> response = balanceController.addMoney(user, transfer);
+        ResponseEntity<String> response = balanceController.addMoney(user, transfer, null);
 
         assertEquals(400, response.getStatusCodeValue());
         assertTrue(response.getBody().contains("Insufficient funds"));
     }
+
+    @Test
+    void testAddMoney_UnexpectedFailureInTransfer() {
+        TransferDto transfer = new TransferDto("otherUser", Money.parse("200"));
+        when(balanceService.resolveTransfer(user, "otherUser")).thenReturn(Optional.of(new TransferParties(2L, account(1L), account(2L))));
+        doThrow(new IllegalStateException("Transfer is not confirmed in time")).when(balanceService).withdraw(any(AccountState.class), any(AccountState.class), any(Money.class));
+
+        ResponseEntity<String> response = balanceController.addMoney(user, transfer, null);
+
+        assertEquals(500, response.getStatusCodeValue());
+        assertFalse(response.getBody().contains("confirmed"));
+    }
+
+    @Test
+    void testAddMoney_RussianUserGetsEnglishResponses() {
+        user.setLocalization(Localization.Type.RU);
+
+        TransferDto transfer = new TransferDto("otherUser", Money.parse("200"));
+        when(balanceService.resolveTransfer(user, "otherUser")).thenReturn(Optional.of(new TransferParties(2L, account(1L), account(2L))));
+
+        ResponseEntity<String> transferred = balanceController.addMoney(user, transfer, null);
+
+        doThrow(new InsufficientFundsException()).when(balanceService).withdraw(any(AccountState.class), any(AccountState.class), any(Money.class));
+        ResponseEntity<String> rejected = balanceController.addMoney(user, transfer, null);
+
+        assertEquals("Money transferred successfully", transferred.getBody());
+        assertEquals(400, rejected.getStatusCodeValue());
+        assertEquals("Not enough money for operation", rejected.getBody());
+    }
+
+    private static AccountState account(Long id) {
+        return new AccountState(id, 1000_00, 0L, 0);
+    }
 }
@@ -0,0 +1,48 @@
+package com.serezka.server.money.database.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serezka.server.money.controller.dto.TransferDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testParse_ExactMinorUnits() {
+        assertEquals(1230, Money.parse("12.3").minor());
+        assertEquals(1230, Money.parse("12.30").minor());
+        assertEquals(5, Money.parse("0.05").minor());
+        assertEquals(-50, Money.parse("-.5").minor());
+        assertEquals(1200, Money.parse("+12").minor());
+        assertEquals(Money.of(new BigDecimal("12.30")), Money.parse("12.3"));
+    }
+
+    @Test
+    void testParse_RejectsInexactAmounts() {
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("0.001"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1e3"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("-"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse(""));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.08"));
+    }
+
+    @Test
+    void testToString_TwoFractionDigits() {
+        assertEquals("12.30", Money.ofMinor(1230).toString());
+        assertEquals("0.05", Money.ofMinor(5).toString());
+        assertEquals("-0.05", Money.ofMinor(-5).toString());
+        assertEquals("-12.00", Money.ofMinor(-1200).toString());
+    }
+
+    @Test
+    void testJson_NumbersAndStringsAreExact() throws Exception {
+        assertEquals(Money.ofMinor(10), objectMapper.readValue("{\"to\":\"user\",\"amount\":0.1}", TransferDto.class).amount());
+        assertEquals(Money.ofMinor(12550), objectMapper.readValue("{\"to\":\"user\",\"amount\":\"125.50\"}", TransferDto.class).amount());
+        assertEquals(Money.ofMinor(200), objectMapper.readValue("{\"to\":\"user\",\"amount\":2}", TransferDto.class).amount());
+        assertEquals("\"12.30\"", objectMapper.writeValueAsString(Money.ofMinor(1230)));
+    }
+}
@@ -0,0 +1,146 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({BalanceService.class, LedgerService.class, StripedBalanceService.class, OptimisticTransferService.class,
+        BalanceCache.class, TransferMetrics.class, SimpleMeterRegistry.class, TestAccounts.class})
+@EnableConfigurationProperties({TransferProperties.class, EngineProperties.class, BalanceCacheProperties.class})
+class BalanceCacheTest {
+    private static final Money AMOUNT = Money.parse("7");
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private BalanceCache balanceCache;
+
+    @Autowired
+    private StripedBalanceService stripedBalanceService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Balance first;
+    private Balance second;
+
+    @BeforeEach
+    void setUp() {
+        first = balanceRepository.save(Balance.builder().user(testAccounts.createUser("first")).build());
+        second = balanceRepository.save(Balance.builder().user(testAccounts.createUser("second")).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testBalance_TransferRefreshesCachedBalances() {
+        assertEquals(Optional.of(Money.parse("1000")), balanceService.balance(first.getUser()));
+        assertEquals(Optional.of(Money.parse("1000")), balanceService.balance(second.getUser()));
+        double hits = hits();
+
+        balanceService.withdraw(first, second, AMOUNT);
+        balanceService.withdraw(second, AMOUNT);
+
+        assertEquals(Optional.of(Money.parse("993")), balanceService.balance(first.getUser()));
+        assertEquals(Optional.of(Money.parse("1000")), balanceService.balance(second.getUser()));
+        assertEquals(hits + 2, hits());
+    }
+
+    @Test
+    void testBalance_RolledBackTransferIsNotCached() {
+        balanceService.balance(first.getUser());
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            balanceService.withdraw(first, second, AMOUNT);
+            throw new IllegalStateException("rollback");
+        }));
+
+        assertEquals(Optional.of(Money.parse("1000")), balanceService.balance(first.getUser()));
+        assertEquals(Optional.of(Money.parse("1000")), balanceService.balance(second.getUser()));
+    }
+
+    @Test
+    void testBalance_LoadRacingWithTransferKeepsNewerVersion() {
+        // balance is read before the transfer commits and put after it
+        balanceCache.get(first.getUser().getId(), () -> {
+            Optional<Balance> stale = balanceRepository.findById(first.getId());
+            balanceService.withdraw(first, second, AMOUNT);
+            return stale;
+        }, () -> balanceRepository.findById(first.getId()));
+
+        assertEquals(Optional.of(Money.parse("993")), balanceService.balance(first.getUser()));
+    }
+
+    @Test
+    void testBalance_LoadBehindCommittedTransferIsRepeatedOnPrimary() {
+        // replica hasn't replayed the transfer yet when the balance is loaded
+        Optional<Balance> stale = balanceRepository.findById(first.getId());
+        balanceService.withdraw(first, second, AMOUNT);
+
+        Optional<Money> balance = balanceCache.get(first.getUser().getId(), () -> stale,
+                () -> balanceRepository.findById(first.getId()));
+
+        assertEquals(Optional.of(Money.parse("993")), balance);
+    }
+
+    @Test
+    void testBalance_StripedBalanceIsReadFromDatabase() {
+        balanceService.balance(first.getUser());
+        stripedBalanceService.stripe(first.getId(), 4);
+
+        // credit lands in a stripe row and doesn't change the version of the balance row
+        balanceService.withdraw(second, balanceRepository.findById(first.getId()).orElseThrow(), AMOUNT);
+
+        assertEquals(Optional.of(Money.parse("1007")), balanceService.balance(first.getUser()));
+        assertEquals(Optional.of(Money.parse("1007")), balanceService.balance(first.getUser()));
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tags("cache", "balances", "result", "hit").functionCounter().count();
+    }
+}
@@ -0,0 +1,164 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({BalanceService.class, LedgerService.class, StripedBalanceService.class, OptimisticTransferService.class,
+        BalanceCache.class, TransferMetrics.class, SimpleMeterRegistry.class, TestAccounts.class})
+@EnableConfigurationProperties({TransferProperties.class, EngineProperties.class, BalanceCacheProperties.class})
+class BalanceServiceConcurrencyTest {
+    private static final int THREADS = 200;
+    private static final int TRANSFERS_PER_DIRECTION = 300;
+    private static final Money AMOUNT = Money.parse("7");
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Balance first;
+    private Balance second;
+
+    @BeforeEach
+    void setUp() {
+        first = balanceRepository.save(Balance.builder().user(testAccounts.createUser("first")).build());
+        second = balanceRepository.save(Balance.builder().user(testAccounts.createUser("second")).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testWithdraw_OppositeTransfersKeepTotalAndNeverDeadlock() throws InterruptedException {
+        AtomicInteger firstToSecond = new AtomicInteger();
+        AtomicInteger secondToFirst = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < TRANSFERS_PER_DIRECTION; i++) {
+            tasks.add(transfer(first, second, firstToSecond, rejected, failures));
+            tasks.add(transfer(second, first, secondToFirst, rejected, failures));
+        }
+        runConcurrently(tasks);
+
+        assertTrue(failures.isEmpty(), () -> "Unexpected failures: " + failures);
+
+        Money firstBalance = reload(first);
+        Money secondBalance = reload(second);
+        Money net = Money.ofMinor(AMOUNT.minor() * (secondToFirst.get() - firstToSecond.get()));
+
+        assertEquals(Money.parse("2000"), firstBalance.plus(secondBalance), "Total must be unchanged");
+        assertEquals(Money.parse("1000").plus(net), firstBalance, "No transfer may be lost");
+        assertEquals(Money.parse("1000").minus(net), secondBalance, "No transfer may be lost");
+        assertEquals(2 * TRANSFERS_PER_DIRECTION, firstToSecond.get() + secondToFirst.get() + rejected.get());
+    }
+
+    @Test
+    void testWithdraw_DrainingBalanceNeverGoesNegative() throws InterruptedException {
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        double rejectedBefore = meterRegistry.get("money.transfer.rejected").counter().count();
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < TRANSFERS_PER_DIRECTION; i++)
+            tasks.add(transfer(first, second, succeeded, rejected, failures));
+        runConcurrently(tasks);
+
+        assertTrue(failures.isEmpty(), () -> "Unexpected failures: " + failures);
+
+        // 1000 / 7 = 142 transfers fit, every other one must be rejected
+        assertEquals(142, succeeded.get());
+        assertEquals(TRANSFERS_PER_DIRECTION - 142, rejected.get());
+        assertEquals(TRANSFERS_PER_DIRECTION - 142, meterRegistry.get("money.transfer.rejected").counter().count() - rejectedBefore);
+        assertEquals(Money.parse("6"), reload(first));
+        assertEquals(Money.parse("1994"), reload(second));
+    }
+
+    private Runnable transfer(Balance from, Balance to, AtomicInteger succeeded, AtomicInteger rejected, Queue<Throwable> failures) {
+        return () -> {
+            try {
+                balanceService.withdraw(from, to, AMOUNT);
+                succeeded.incrementAndGet();
+            } catch (InsufficientFundsException e) {
+                rejected.incrementAndGet();
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        };
+    }
+
+    private void runConcurrently(List<Runnable> tasks) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (Runnable task : tasks)
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "Transfers did not finish in time");
+    }
+
+    private Money reload(Balance balance) {
+        return balanceRepository.findById(balance.getId()).orElseThrow().getBalance();
+    }
+}
@@ -0,0 +1,203 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.controller.dto.TransferDto;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.model.TransferStatus;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.BalanceStripeRepository;
+import com.serezka.server.money.database.repository.HistoryEntry;
+import com.serezka.server.money.engine.TransferEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = "money.transfer.batch.chunk-size=3")
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({BatchTransferService.class, LedgerService.class, BalanceCache.class, StripedBalanceService.class,
+        SimpleMeterRegistry.class, TestAccounts.class})
+@EnableConfigurationProperties({TransferProperties.class, BalanceCacheProperties.class})
+class BatchTransferServiceTest {
+    @Autowired
+    private BatchTransferService batchTransferService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private BalanceStripeRepository balanceStripeRepository;
+
+    @Autowired
+    private StripedBalanceService stripedBalanceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    private Balance sender;
+    private Balance first;
+    private Balance second;
+
+    @BeforeEach
+    void setUp() {
+        sender = testAccounts.createBalance("sender");
+        first = testAccounts.createBalance("first");
+        second = testAccounts.createBalance("second");
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceStripeRepository.deleteAll();
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testTransfer_ReportsEveryItem() {
+        List<TransferStatus> statuses = batchTransferService.transfer(sender, List.of(
+                new TransferDto("first", Money.parse("100")),
+                new TransferDto("nobody", Money.parse("100")),
+                new TransferDto("second", Money.parse("850")),
+                new TransferDto("second", Money.parse("50")),
+                new TransferDto("sender", Money.parse("10")),
+                new TransferDto("first", Money.parse("-5")),
+                new TransferDto("second", Money.parse("50.5"))
+        ));
+
+        assertEquals(List.of(
+                TransferStatus.OK,
+                TransferStatus.UNKNOWN_USER,
+                TransferStatus.OK,
+                TransferStatus.OK,
+                TransferStatus.INVALID,
+                TransferStatus.INVALID,
+                TransferStatus.INSUFFICIENT_FUNDS
+        ), statuses);
+
+        assertBalance(0, sender);
+        assertBalance(1100, first);
+        assertBalance(1900, second);
+
+        assertEquals(3, ledgerService.history(sender.getId(), null, 100).size());
+        assertEquals(2, ledgerService.history(second.getId(), null, 100).size());
+        assertEquals("sender", ledgerService.history(first.getId(), null, 100).get(0).getCounterparty());
+    }
+
+    @Test
+    void testTransfer_ManyChunksKeepTotal() {
+        List<TransferDto> transfers = new ArrayList<>();
+        for (int i = 0; i < 300; i++) transfers.add(new TransferDto(i % 2 == 0 ? "first" : "second", Money.parse("5")));
+
+        List<TransferStatus> statuses = batchTransferService.transfer(sender, transfers);
+
+        assertEquals(200, statuses.stream().filter(TransferStatus.OK::equals).count());
+        assertEquals(100, statuses.stream().filter(TransferStatus.INSUFFICIENT_FUNDS::equals).count());
+        assertBalance(0, sender);
+        assertBalance(1500, first);
+        assertBalance(1500, second);
+
+        // walk sender history with keyset pages
+        int entries = 0;
+        Long before = null;
+        List<HistoryEntry> page;
+        do {
+            page = ledgerService.history(sender.getId(), before, 30);
+            entries += page.size();
+            if (!page.isEmpty()) before = page.get(page.size() - 1).getId();
+        } while (page.size() == 30);
+        assertEquals(200, entries);
+    }
+
+    @Test
+    void testTransfer_StripedSenderAndRecipient() {
+        stripedBalanceService.stripe(sender.getId(), 4);
+        stripedBalanceService.stripe(first.getId(), 4);
+
+        // no single slot of the sender holds 400, the whole balance does
+        List<TransferStatus> statuses = batchTransferService.transfer(sender, List.of(
+                new TransferDto("first", Money.parse("400")),
+                new TransferDto("second", Money.parse("300")),
+                new TransferDto("first", Money.parse("400")),
+                new TransferDto("first", Money.parse("300"))
+        ));
+
+        assertEquals(List.of(
+                TransferStatus.OK,
+                TransferStatus.OK,
+                TransferStatus.INSUFFICIENT_FUNDS,
+                TransferStatus.OK
+        ), statuses);
+
+        assertEquals(Optional.of(0L), balanceRepository.findTotalById(sender.getId()));
+        assertEquals(Optional.of(Money.parse("1700").minor()), balanceRepository.findTotalById(first.getId()));
+        assertBalance(1300, second);
+        assertEquals(3, ledgerService.history(sender.getId(), null, 100).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApply_EngineFailuresAreReportedPerTransfer() {
+        TransferEngine engine = mock(TransferEngine.class);
+        when(engine.transfer(eq(1L), eq(2L), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(engine.transfer(eq(1L), eq(3L), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Write-ahead log failed")));
+        when(engine.transfer(eq(1L), eq(4L), any())).thenThrow(new IllegalStateException("Failed to load balance"));
+        when(engine.transfer(eq(1L), eq(5L), any())).thenReturn(CompletableFuture.failedFuture(new InsufficientFundsException()));
+        ObjectProvider<TransferEngine> engineProvider = mock(ObjectProvider.class);
+        when(engineProvider.getObject()).thenReturn(engine);
+
+        TransferProperties properties = new TransferProperties();
+        properties.setMode(TransferProperties.Mode.MEMORY);
+        BatchTransferService engineBatches = new BatchTransferService(balanceRepository, null, properties, ledgerService, engineProvider, null, null);
+
+        Money amount = Money.parse("1");
+        assertEquals(List.of(
+                TransferStatus.OK,
+                TransferStatus.FAILED,
+                TransferStatus.FAILED,
+                TransferStatus.INSUFFICIENT_FUNDS
+        ), engineBatches.apply(List.of(
+                new Transfer(1L, 2L, amount),
+                new Transfer(1L, 3L, amount),
+                new Transfer(1L, 4L, amount),
+                new Transfer(1L, 5L, amount)
+        )));
+    }
+
+    private void assertBalance(long expected, Balance balance) {
+        Money actual = balanceRepository.findById(balance.getId()).orElseThrow().getBalance();
+        assertEquals(Money.ofMinor(expected * 100), actual);
+    }
+}
@@ -0,0 +1,126 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.ExportProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.LedgerRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "money.export.fetch-size=2")
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ExportService.class, LedgerService.class, TestAccounts.class})
+@EnableConfigurationProperties(ExportProperties.class)
+class ExportServiceTest {
+    private static final int ACCOUNTS = 5;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private LedgerRepository ledgerRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Balance> balances = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < ACCOUNTS; i++)
+            balances.add(balanceRepository.save(Balance.builder().user(testAccounts.createUser("user" + i)).build()));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            ledgerService.record(new Transfer(balances.get(0).getId(), balances.get(1).getId(), Money.parse("12.30")));
+            ledgerService.recordWithdrawal(balances.get(2).getId(), Money.parse("5"));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledgerRepository.deleteAll();
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testExport_WritesOneObjectPerRow() throws IOException {
+        List<JsonNode> users = export(ExportService.Dataset.USERS, false);
+        assertEquals(ACCOUNTS, users.size());
+        assertEquals("user0", users.get(0).get("username").asText());
+        assertFalse(users.get(0).has("password"));
+
+        List<JsonNode> accounts = export(ExportService.Dataset.BALANCES, false);
+        assertEquals(ACCOUNTS, accounts.size());
+        assertEquals("1000.00", accounts.get(0).get("balance").asText());
+        assertEquals(balances.get(0).getUser().getId(), accounts.get(0).get("userId").asLong());
+    }
+
+    @Test
+    void testExport_TransfersWithGzip() throws IOException {
+        List<JsonNode> entries = export(ExportService.Dataset.TRANSFERS, true);
+
+        assertEquals(3, entries.size());
+        assertEquals("-12.30", entries.get(0).get("amount").asText());
+        assertEquals(balances.get(1).getId(), entries.get(0).get("counterpartyId").asLong());
+        assertEquals("12.30", entries.get(1).get("amount").asText());
+        assertEquals(entries.get(0).get("transferId"), entries.get(1).get("transferId"));
+        assertTrue(entries.get(2).get("counterpartyId").isNull());
+    }
+
+    private List<JsonNode> export(ExportService.Dataset dataset, boolean gzip) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long rows = exportService.export(dataset, output, gzip);
+
+        InputStream input = new ByteArrayInputStream(output.toByteArray());
+        if (gzip) input = new GZIPInputStream(input);
+
+        List<JsonNode> objects = new ArrayList<>();
+        for (String line : new String(input.readAllBytes(), StandardCharsets.UTF_8).split("\n"))
+            objects.add(objectMapper.readTree(line));
+        assertEquals(rows, objects.size());
+        return objects;
+    }
+}
@@ -0,0 +1,180 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.money.config.IdempotencyProperties;
+import com.serezka.server.money.database.model.IdempotencyRecord;
+import com.serezka.server.money.database.repository.IdempotencyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(IdempotencyService.class)
+@EnableConfigurationProperties(IdempotencyProperties.class)
+class IdempotencyServiceTest {
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRepository idempotencyRepository;
+
+    @Test
+    void testExecute_RepeatReturnsStoredResponse() {
+        AtomicInteger executions = new AtomicInteger();
+
+        ResponseEntity<String> first = idempotencyService.execute(1L, "repeat", "a:1", () -> ok(executions));
+        ResponseEntity<String> second = idempotencyService.execute(1L, "repeat", "a:1", () -> ok(executions));
+
+        assertEquals(1, executions.get());
+        assertEquals(first.getBody(), second.getBody());
+        assertTrue(idempotencyRepository.existsById("1:repeat"));
+    }
+
+    @Test
+    void testExecute_KeysAreScopedByOwner() {
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyService.execute(1L, "scoped", "a:1", () -> ok(executions));
+        idempotencyService.execute(2L, "scoped", "a:1", () -> ok(executions));
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testExecute_ReusedKeyWithOtherRequestIsRejected() {
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyService.execute(1L, "reused", "a:1", () -> ok(executions));
+        ResponseEntity<String> response = idempotencyService.execute(1L, "reused", "b:2", () -> ok(executions));
+
+        assertEquals(1, executions.get());
+        assertEquals(422, response.getStatusCode().value());
+    }
+
+    @Test
+    void testExecute_FailureIsStored() {
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyService.execute(1L, "failure", "a:1", () -> {
+            executions.incrementAndGet();
+            return ResponseEntity.badRequest().body("Not enough money for operation");
+        });
+        ResponseEntity<String> response = idempotencyService.execute(1L, "failure", "a:1", () -> ok(executions));
+
+        assertEquals(1, executions.get());
+        assertEquals(400, response.getStatusCode().value());
+        assertTrue(idempotencyRepository.existsById("1:failure"));
+    }
+
+    @Test
+    void testExecute_ServerErrorIsNotStored() {
+        AtomicInteger executions = new AtomicInteger();
+
+        ResponseEntity<String> first = idempotencyService.execute(1L, "server-error", "a:1", () -> {
+            executions.incrementAndGet();
+            return ResponseEntity.internalServerError().body("Transfer failed, try again later");
+        });
+        ResponseEntity<String> retry = idempotencyService.execute(1L, "server-error", "a:1", () -> ok(executions));
+
+        assertEquals(500, first.getStatusCode().value());
+        assertEquals(2, executions.get());
+        assertEquals(200, retry.getStatusCode().value());
+    }
+
+    @Test
+    void testExecute_LongestRecipientNameFitsFingerprint() {
+        AtomicInteger executions = new AtomicInteger();
+        String fingerprint = "r".repeat(255) + ":100.00";
+
+        ResponseEntity<String> first = idempotencyService.execute(1L, "long", fingerprint, () -> ok(executions));
+        ResponseEntity<String> engine = idempotencyService.execute(1L, "long-engine", fingerprint, false, () -> ok(executions));
+        ResponseEntity<String> repeated = idempotencyService.execute(1L, "long", fingerprint, () -> ok(executions));
+
+        assertEquals(200, first.getStatusCode().value());
+        assertEquals(200, engine.getStatusCode().value());
+        assertEquals(first.getBody(), repeated.getBody());
+        assertEquals(2, executions.get());
+        assertEquals(64, idempotencyRepository.findById("1:long").orElseThrow().getFingerprint().length());
+    }
+
+    @Test
+    void testExecute_ConcurrentDuplicatesRunOnce() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+            responses.add(executor.submit(() -> idempotencyService.execute(1L, "concurrent", "a:1", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ok(executions);
+            })));
+
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<ResponseEntity<String>> response : responses)
+            assertEquals(200, response.get().getStatusCode().value());
+        executor.shutdown();
+
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void testExecute_WithoutTransactionActionRunsOutsideOfIt() {
+        AtomicInteger executions = new AtomicInteger();
+
+        ResponseEntity<String> first = idempotencyService.execute(1L, "outside", "a:1", false, () -> {
+            assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+            return ok(executions);
+        });
+        ResponseEntity<String> second = idempotencyService.execute(1L, "outside", "a:1", false, () -> ok(executions));
+
+        assertEquals(1, executions.get());
+        assertEquals(first.getBody(), second.getBody());
+        assertEquals(200, idempotencyRepository.findById("1:outside").orElseThrow().getStatus());
+    }
+
+    @Test
+    void testExecute_WithoutTransactionFailedActionIsNotRunAgain() {
+        AtomicInteger executions = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(1L, "unknown", "a:1", false, () -> {
+            executions.incrementAndGet();
+            throw new IllegalStateException("Transfer is not confirmed in time");
+        }));
+        ResponseEntity<String> retry = idempotencyService.execute(1L, "unknown", "a:1", false, () -> ok(executions));
+
+        assertEquals(1, executions.get());
+        assertEquals(409, retry.getStatusCode().value());
+        assertEquals(IdempotencyRecord.PENDING, idempotencyRepository.findById("1:unknown").orElseThrow().getStatus());
+    }
+
+    private ResponseEntity<String> ok(AtomicInteger executions) {
+        return ResponseEntity.ok("Money transferred successfully #" + executions.incrementAndGet());
+    }
+}
@@ -0,0 +1,146 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.TransferParties;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "money.transfer.mode=optimistic",
+        "money.transfer.optimistic.max-attempts=3",
+        "money.transfer.optimistic.initial-backoff=1ms"
+})
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({BalanceService.class, LedgerService.class, StripedBalanceService.class, OptimisticTransferService.class,
+        BalanceCache.class, TransferMetrics.class, SimpleMeterRegistry.class, TestAccounts.class})
+@EnableConfigurationProperties({TransferProperties.class, EngineProperties.class, BalanceCacheProperties.class})
+class OptimisticTransferServiceTest {
+    private static final int THREADS = 32;
+    private static final int TRANSFERS_PER_DIRECTION = 200;
+    private static final Money AMOUNT = Money.parse("7");
+
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Balance first;
+    private Balance second;
+
+    @BeforeEach
+    void setUp() {
+        first = balanceRepository.save(Balance.builder().user(testAccounts.createUser("first")).build());
+        second = balanceRepository.save(Balance.builder().user(testAccounts.createUser("second")).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testWithdraw_ConflictingTransfersKeepTotal() throws InterruptedException {
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < TRANSFERS_PER_DIRECTION; i++) {
+            executor.execute(transfer(first, second, succeeded, rejected, failures));
+            executor.execute(transfer(second, first, succeeded, rejected, failures));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "Transfers did not finish in time");
+
+        assertTrue(failures.isEmpty(), () -> "Unexpected failures: " + failures);
+        assertEquals(2 * TRANSFERS_PER_DIRECTION, succeeded.get() + rejected.get());
+        assertEquals(Money.parse("2000"), reload(first).plus(reload(second)), "Total must be unchanged");
+    }
+
+    @Test
+    void testWithdraw_InsufficientFunds() {
+        assertThrows(InsufficientFundsException.class, () -> balanceService.withdraw(first, second, Money.parse("1001")));
+
+        assertEquals(Money.parse("1000"), reload(first));
+        assertEquals(Money.parse("1000"), reload(second));
+    }
+
+    @Test
+    void testWithdraw_InsideTransactionLocksRows() {
+        transactionTemplate.executeWithoutResult(status -> balanceService.withdraw(first, second, AMOUNT));
+        balanceService.withdraw(first, AMOUNT);
+
+        assertEquals(Money.parse("986"), reload(first));
+        assertEquals(Money.parse("1007"), reload(second));
+    }
+
+    @Test
+    void testWithdraw_StaleResolvedStateIsRetried() {
+        TransferParties parties = balanceService.resolveTransfer(first.getUser(), "second").orElseThrow();
+        // changes both versions after they were resolved
+        balanceService.withdraw(second, first, AMOUNT);
+
+        balanceService.withdraw(parties.from(), parties.to(), AMOUNT);
+
+        assertEquals(Money.parse("1000"), reload(first));
+        assertEquals(Money.parse("1000"), reload(second));
+    }
+
+    private Runnable transfer(Balance from, Balance to, AtomicInteger succeeded, AtomicInteger rejected, Queue<Throwable> failures) {
+        return () -> {
+            try {
+                balanceService.withdraw(from, to, AMOUNT);
+                succeeded.incrementAndGet();
+            } catch (InsufficientFundsException e) {
+                rejected.incrementAndGet();
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        };
+    }
+
+    private Money reload(Balance balance) {
+        return balanceRepository.findById(balance.getId()).orElseThrow().getBalance();
+    }
+}
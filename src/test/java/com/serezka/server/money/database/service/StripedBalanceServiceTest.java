@@ -0,0 +1,136 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.BalanceStripeRepository;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({BalanceService.class, LedgerService.class, StripedBalanceService.class, OptimisticTransferService.class,
+        BalanceCache.class, TransferMetrics.class, SimpleMeterRegistry.class, TestAccounts.class})
+@EnableConfigurationProperties({TransferProperties.class, EngineProperties.class, BalanceCacheProperties.class})
+class StripedBalanceServiceTest {
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private StripedBalanceService stripedBalanceService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private BalanceStripeRepository balanceStripeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    private Balance merchant;
+    private Balance customer;
+
+    @BeforeEach
+    void setUp() {
+        merchant = testAccounts.createBalance("merchant");
+        customer = testAccounts.createBalance("customer");
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceStripeRepository.deleteAll();
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testStripe_SpreadsMoneyAndKeepsTotal() {
+        stripedBalanceService.stripe(merchant.getId(), 3);
+
+        Balance striped = reload(merchant);
+        assertEquals(3, striped.getStripes());
+        assertEquals(Money.parse("1000"), striped.getTotal());
+        // 1000 / 3 = 333.33 per stripe, remainder stays in the balance row
+        assertEquals(Money.parse("333.34"), striped.getBalance());
+        assertEquals(2, balanceStripeRepository.count());
+
+        stripedBalanceService.stripe(merchant.getId(), 1);
+
+        assertEquals(Money.parse("1000"), reload(merchant).getBalance());
+        assertEquals(0, balanceStripeRepository.count());
+    }
+
+    @Test
+    void testWithdraw_DebitDrainsAllStripes() {
+        stripedBalanceService.stripe(merchant.getId(), 4);
+
+        // no single stripe holds 900, so every slot has to be drained together
+        balanceService.withdraw(reload(merchant), reload(customer), Money.parse("900"));
+
+        assertEquals(Money.parse("100"), reload(merchant).getTotal());
+        assertEquals(Money.parse("1900"), reload(customer).getTotal());
+        assertThrows(InsufficientFundsException.class,
+                () -> balanceService.withdraw(reload(merchant), reload(customer), Money.parse("101")));
+    }
+
+    @Test
+    void testWithdraw_ConcurrentCreditsToStripedBalanceKeepTotal() throws InterruptedException {
+        stripedBalanceService.stripe(merchant.getId(), 8);
+        Balance striped = reload(merchant);
+        Balance payer = reload(customer);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < 200; i++)
+            executor.execute(() -> {
+                try {
+                    balanceService.withdraw(payer, striped, Money.parse("5"));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "Transfers did not finish in time");
+
+        assertTrue(failures.isEmpty(), () -> "Unexpected failures: " + failures);
+        assertEquals(Money.parse("2000"), reload(merchant).getTotal());
+
+        stripedBalanceService.rebalance();
+        assertEquals(Money.parse("2000"), reload(merchant).getTotal());
+        assertEquals(Money.parse("250"), reload(merchant).getBalance());
+    }
+
+    private Balance reload(Balance balance) {
+        return balanceRepository.findById(balance.getId()).orElseThrow();
+    }
+}
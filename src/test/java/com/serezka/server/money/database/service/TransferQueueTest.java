@@ -0,0 +1,127 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.model.Transfer;
+import com.serezka.server.money.database.model.TransferStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class TransferQueueTest {
+    private static final Long USER = 1L;
+
+    private final BatchTransferService batchTransferService = mock(BatchTransferService.class);
+    private TransferQueue transferQueue;
+
+    @AfterEach
+    void tearDown() {
+        if (transferQueue != null) transferQueue.close();
+    }
+
+    @Test
+    void testSubmit_AppliesTransfersInBatches() throws Exception {
+        // transfers over 100 are rejected, like a balance running out of money
+        when(batchTransferService.apply(anyList())).thenAnswer(invocation -> {
+            List<Transfer> transfers = invocation.getArgument(0);
+            return transfers.stream()
+                    .map(transfer -> transfer.amount().minor() > 100_00 ? TransferStatus.INSUFFICIENT_FUNDS : TransferStatus.OK)
+                    .toList();
+        });
+        transferQueue = start(1000, 50);
+
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) ids.add(transferQueue.submit(USER, transfer(i)).orElseThrow());
+
+        for (int i = 1; i <= 200; i++) {
+            TransferStatus status = transferQueue.result(USER, ids.get(i - 1)).orElseThrow().get(10, TimeUnit.SECONDS);
+            assertEquals(i > 100 ? TransferStatus.INSUFFICIENT_FUNDS : TransferStatus.OK, status);
+        }
+        assertEquals(Optional.empty(), transferQueue.result(2L, ids.get(0)), "Other users can't poll the transfer");
+        verify(batchTransferService, atMost(200 / 50 + 200 / 2)).apply(anyList());
+    }
+
+    @Test
+    void testSubmit_RejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(batchTransferService.apply(anyList())).thenAnswer(invocation -> {
+            applying.countDown();
+            release.await();
+            return List.of(TransferStatus.OK);
+        });
+        transferQueue = start(2, 1);
+
+        // first transfer is taken by the worker and blocks it
+        UUID first = transferQueue.submit(USER, transfer(1)).orElseThrow();
+        assertTrue(applying.await(10, TimeUnit.SECONDS));
+
+        UUID second = transferQueue.submit(USER, transfer(2)).orElseThrow();
+        UUID third = transferQueue.submit(USER, transfer(3)).orElseThrow();
+        assertEquals(Optional.empty(), transferQueue.submit(USER, transfer(4)));
+        assertEquals(TransferStatus.PENDING, transferQueue.result(USER, second).orElseThrow().getNow(TransferStatus.PENDING));
+
+        release.countDown();
+        for (UUID id : List.of(first, second, third))
+            assertEquals(TransferStatus.OK, transferQueue.result(USER, id).orElseThrow().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubmit_FailedBatchIsAppliedOneByOne() throws Exception {
+        // batch fails as a whole, then only the broken transfer fails on its own
+        when(batchTransferService.apply(anyList())).thenAnswer(invocation -> {
+            List<Transfer> transfers = invocation.getArgument(0);
+            if (transfers.stream().anyMatch(transfer -> transfer.fromId() == 13L)) throw new IllegalStateException("broken");
+            return transfers.stream().map(transfer -> TransferStatus.OK).toList();
+        });
+        when(batchTransferService.appliesInTransaction()).thenReturn(true);
+        transferQueue = start(100, 100);
+
+        UUID broken = transferQueue.submit(USER, new Transfer(13L, 2L, Money.parse("1"))).orElseThrow();
+        UUID fine = transferQueue.submit(USER, transfer(1)).orElseThrow();
+
+        assertEquals(TransferStatus.FAILED, transferQueue.result(USER, broken).orElseThrow().get(10, TimeUnit.SECONDS));
+        assertEquals(TransferStatus.OK, transferQueue.result(USER, fine).orElseThrow().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubmit_FailedEngineBatchIsNotApplied() throws Exception {
+        // engine applies transfers one by one, retrying them could move money twice
+        when(batchTransferService.apply(anyList())).thenThrow(new IllegalStateException("broken"));
+        when(batchTransferService.appliesInTransaction()).thenReturn(false);
+        transferQueue = start(100, 100);
+
+        UUID id = transferQueue.submit(USER, transfer(1)).orElseThrow();
+
+        assertEquals(TransferStatus.FAILED, transferQueue.result(USER, id).orElseThrow().get(10, TimeUnit.SECONDS));
+        verify(batchTransferService, times(1)).apply(anyList());
+    }
+
+    private TransferQueue start(int capacity, int batchSize) {
+        TransferQueue queue = new TransferQueue(batchTransferService, properties(capacity, batchSize), new SimpleMeterRegistry());
+        queue.start();
+        return queue;
+    }
+
+    private static TransferProperties properties(int capacity, int batchSize) {
+        TransferProperties properties = new TransferProperties();
+        properties.getAsync().setQueueCapacity(capacity);
+        properties.getAsync().setBatchSize(batchSize);
+        return properties;
+    }
+
+    private static Transfer transfer(int amount) {
+        return new Transfer(1L, 2L, Money.ofMinor(amount * 100L));
+    }
+}
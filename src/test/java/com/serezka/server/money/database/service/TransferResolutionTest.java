@@ -0,0 +1,102 @@
+package com.serezka.server.money.database.service;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.model.User;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.BalanceCacheProperties;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.config.TransferProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.TransferParties;
+import com.serezka.server.money.metrics.TransferMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "money.transfer.mode=pessimistic")
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({BalanceService.class, LedgerService.class, StripedBalanceService.class, OptimisticTransferService.class,
+        BalanceCache.class, TransferMetrics.class, SimpleMeterRegistry.class, TestAccounts.class})
+@EnableConfigurationProperties({TransferProperties.class, EngineProperties.class, BalanceCacheProperties.class})
+class TransferResolutionTest {
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    private User sender;
+    private Balance from;
+    private Balance to;
+
+    @BeforeEach
+    void setUp() {
+        sender = testAccounts.createUser("sender");
+        from = balanceRepository.save(Balance.builder().user(sender).build());
+        to = balanceRepository.save(Balance.builder().user(testAccounts.createUser("recipient")).balance(Money.parse("5")).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testResolveTransfer_BothSides() {
+        TransferParties parties = balanceService.resolveTransfer(sender, "recipient").orElseThrow();
+
+        assertEquals(to.getUser().getId(), parties.recipientUserId());
+        assertEquals(from.getId(), parties.from().getId());
+        assertEquals(Money.parse("1000").minor(), parties.from().getAmount());
+        assertEquals(from.getVersion(), parties.from().getVersion());
+        assertEquals(to.getId(), parties.to().getId());
+        assertEquals(Money.parse("5").minor(), parties.to().getAmount());
+        assertEquals(to.getVersion(), parties.to().getVersion());
+    }
+
+    @Test
+    void testResolveTransfer_MissingRecipient() {
+        TransferParties unknown = balanceService.resolveTransfer(sender, "nobody").orElseThrow();
+        assertNull(unknown.recipientUserId());
+        assertNull(unknown.to());
+        assertEquals(from.getId(), unknown.from().getId());
+
+        User poor = testAccounts.createUser("poor");
+        TransferParties withoutBalance = balanceService.resolveTransfer(sender, "poor").orElseThrow();
+        assertEquals(poor.getId(), withoutBalance.recipientUserId());
+        assertNull(withoutBalance.to());
+    }
+
+    @Test
+    void testWithdraw_ResolvedStateLockedAndUpdated() {
+        TransferParties parties = balanceService.resolveTransfer(sender, "recipient").orElseThrow();
+
+        balanceService.withdraw(parties.from(), parties.to(), Money.parse("300"));
+        assertThrows(InsufficientFundsException.class, () -> balanceService.withdraw(parties.from(), parties.to(), Money.parse("701")));
+
+        assertEquals(Money.parse("700"), balanceRepository.findById(from.getId()).orElseThrow().getBalance());
+        assertEquals(Money.parse("305"), balanceRepository.findById(to.getId()).orElseThrow().getBalance());
+    }
+}
@@ -0,0 +1,171 @@
+package com.serezka.server.money.engine;
+
+import com.serezka.server.TestAccounts;
+import com.serezka.server.authorization.database.repository.UserRepository;
+import com.serezka.server.money.config.EngineProperties;
+import com.serezka.server.money.database.model.Balance;
+import com.serezka.server.money.database.model.Money;
+import com.serezka.server.money.database.repository.BalanceRepository;
+import com.serezka.server.money.database.repository.EngineCheckpointRepository;
+import com.serezka.server.money.database.repository.LedgerRepository;
+import com.serezka.server.money.database.service.InsufficientFundsException;
+import com.serezka.server.money.database.service.LedgerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({LedgerService.class, TestAccounts.class})
+class MemoryTransferEngineTest {
+    private static final Money AMOUNT = Money.parse("7");
+
+    @Autowired
+    private BalanceRepository balanceRepository;
+
+    @Autowired
+    private EngineCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private LedgerRepository ledgerRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestAccounts testAccounts;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    private Path wal;
+
+    private Balance first;
+    private Balance second;
+
+    @BeforeEach
+    void setUp() {
+        first = testAccounts.createBalance("first");
+        second = testAccounts.createBalance("second");
+    }
+
+    @AfterEach
+    void tearDown() {
+        checkpointRepository.deleteAll();
+        ledgerRepository.deleteAll();
+        balanceRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testTransfer_AppliedInMemoryAndWrittenOnClose() throws Exception {
+        MemoryTransferEngine engine = start();
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(engine.transfer(first.getId(), second.getId(), AMOUNT));
+            results.add(engine.transfer(second.getId(), first.getId(), AMOUNT));
+        }
+
+        int rejected = 0;
+        for (CompletableFuture<Void> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertInstanceOf(InsufficientFundsException.class, e.getCause());
+                rejected++;
+            }
+        }
+
+        // credits are applied on the recipient shard right after the caller is acknowledged
+        Thread.sleep(100);
+        Money firstInMemory = engine.balance(first.getId()).orElseThrow();
+        Money secondInMemory = engine.balance(second.getId()).orElseThrow();
+        assertEquals(Money.parse("2000"), firstInMemory.plus(secondInMemory), "Total must be unchanged");
+
+        engine.close();
+
+        assertEquals(firstInMemory, reload(first));
+        assertEquals(secondInMemory, reload(second));
+        assertEquals(2L * (results.size() - rejected), ledgerRepository.count());
+        assertTrue(checkpointRepository.findById(EngineWriter.CHECKPOINT).orElseThrow().getLsn() > 0);
+    }
+
+    @Test
+    void testTransfer_UnknownBalanceIsRejected() throws Exception {
+        MemoryTransferEngine engine = start();
+
+        CompletableFuture<Void> result = engine.transfer(first.getId(), Long.MAX_VALUE, AMOUNT);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        engine.close();
+    }
+
+    @Test
+    void testStart_ReplaysLogExactlyOnce() throws Exception {
+        // records that were forced but never written to the database, as after a crash
+        WriteAheadLog log = new WriteAheadLog(wal, 4096, entries -> {
+        });
+        log.open(0);
+        for (int i = 0; i < 100; i++)
+            log.append(new WalRecord(UUID.randomUUID(), first.getId(), second.getId(), AMOUNT.minor(), Instant.now()));
+        log.append(new WalRecord(UUID.randomUUID(), second.getId(), null, Money.parse("10").minor(), Instant.now())).get();
+        log.close();
+
+        start().close();
+
+        assertEquals(Money.parse("300"), reload(first));
+        assertEquals(Money.parse("1690"), reload(second));
+        assertEquals(201, ledgerRepository.count());
+
+        // second start finds everything behind the checkpoint
+        start().close();
+
+        assertEquals(Money.parse("300"), reload(first));
+        assertEquals(201, ledgerRepository.count());
+    }
+
+    private MemoryTransferEngine start() throws Exception {
+        EngineProperties properties = new EngineProperties();
+        properties.setShards(4);
+        properties.setWalDirectory(wal);
+        properties.setSegmentSize(DataSize.ofKilobytes(4));
+
+        MemoryTransferEngine engine = new MemoryTransferEngine(properties, balanceRepository, checkpointRepository,
+                ledgerService, transactionTemplate);
+        engine.start();
+        return engine;
+    }
+
+    private Money reload(Balance balance) {
+        return balanceRepository.findById(balance.getId()).orElseThrow().getBalance();
+    }
+}
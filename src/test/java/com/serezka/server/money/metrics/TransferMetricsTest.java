@@ -0,0 +1,72 @@
+package com.serezka.server.money.metrics;
+
+import com.serezka.server.money.database.service.InsufficientFundsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferMetricsTest {
+    private SimpleMeterRegistry meterRegistry;
+    private TransferMetrics transferMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        transferMetrics = new TransferMetrics(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void testFailed_CountsByCause() {
+        transferMetrics.failed(new InsufficientFundsException());
+        transferMetrics.failed(new ObjectOptimisticLockingFailureException("Balance", 1L));
+        transferMetrics.failed(new CannotAcquireLockException("deadlock"));
+        transferMetrics.failed(new IllegalArgumentException("Balance not found"));
+
+        assertEquals(1, meterRegistry.get("money.transfer.rejected").counter().count());
+        assertEquals(1, meterRegistry.get("money.transfer.conflicts").tag("lock", "optimistic").counter().count());
+        assertEquals(1, meterRegistry.get("money.transfer.conflicts").tag("lock", "pessimistic").counter().count());
+    }
+
+    @Test
+    void testRecord_TimesPhase() {
+        int updated = transferMetrics.record(TransferMetrics.Phase.UPDATE, () -> 1);
+
+        assertEquals(1, updated);
+        assertEquals(1, meterRegistry.get("money.transfer.phase").tag("phase", "update").timer().count());
+        assertEquals(0, meterRegistry.get("money.transfer.phase").tag("phase", "lock").timer().count());
+    }
+
+    @Test
+    void testRecordCommit_OnlyCommittedTransactions() {
+        TransactionSynchronizationManager.initSynchronization();
+        transferMetrics.recordCommit();
+        transferMetrics.recordCommit();
+
+        // one committed, one rolled back before reaching commit
+        TransactionSynchronization committed = TransactionSynchronizationManager.getSynchronizations().get(0);
+        TransactionSynchronization rolledBack = TransactionSynchronizationManager.getSynchronizations().get(1);
+        committed.beforeCommit(false);
+        committed.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        rolledBack.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(1, meterRegistry.get("money.transfer.phase").tag("phase", "commit").timer().count());
+    }
+
+    @Test
+    void testRecordCommit_OutsideTransaction() {
+        assertDoesNotThrow(transferMetrics::recordCommit);
+    }
+}